@@ -22,6 +22,8 @@ package io.openraven.magpie.api;
 
 import org.slf4j.Logger;
 
+import java.util.List;
+
 /**
  * IntermediatePlugin implementations provide the glue between Origin (discovery) plugins and Terminal (output) plugins.  They may
  * perform more in-depth discovery on assets or do schema transformations to support specific downstream schemas.  They
@@ -38,4 +40,30 @@ public interface IntermediatePlugin<T> extends MagpiePlugin<T> {
    * @param emitter The {@link Emitter} to pass processed envelopes downstream.
    */
   void accept(MagpieEnvelope env, Emitter emitter);
+
+  /**
+   * Accept a batch of incoming assets for processing and emit downstream.  The default implementation hands each
+   * envelope to {@link #accept(MagpieEnvelope, Emitter)} in order; plugins that benefit from processing several assets at
+   * once may override it.  A failure on one envelope does not prevent the remainder of the batch from being processed,
+   * the first failure is rethrown once the batch completes.
+   * @param envs The {@link MagpieEnvelope envelopes} provided by a higher layer plugin, in FIFO order.
+   * @param emitter The {@link Emitter} to pass processed envelopes downstream.
+   */
+  default void acceptBatch(List<MagpieEnvelope> envs, Emitter emitter) {
+    RuntimeException failure = null;
+    for (var env : envs) {
+      try {
+        accept(env, emitter);
+      } catch (RuntimeException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
 }
@@ -33,6 +33,28 @@ import java.util.Map;
  */
 public class MagpieEnvelope {
 
+  /**
+   * Metadata set to "true" on envelopes whose contents only record that a resource emitted in full by an earlier scan
+   * is still present and unchanged.  Their configuration, supplementaryConfiguration, tags and discoveryMeta are left
+   * out, and must not be taken to be empty.
+   */
+  public static final String UNCHANGED_METADATA = "magpie.unchanged";
+
+  /**
+   * Metadata naming, on envelopes flagged with {@link #UNCHANGED_METADATA}, a file to which terminals that keep assets
+   * append the document ids, one per line, of markers whose asset they don't hold, so that the next scan emits those
+   * assets in full.
+   */
+  public static final String STALE_FILE_METADATA = "magpie.unchanged.staleFile";
+
+  /**
+   * @return Whether the envelope only records that an unchanged resource is still present.
+   * @see #UNCHANGED_METADATA
+   */
+  public static boolean isUnchanged(MagpieEnvelope env) {
+    return "true".equals(env.getMetadata().get(UNCHANGED_METADATA));
+  }
+
   /**
    * {@link IntermediatePlugin} implementations should use this static factory method to create a new envelope that derives
    * from an existing envelope.  This ensures the continuity of the envelops pluginPath.
@@ -54,6 +54,26 @@ public interface MagpiePlugin<T> {
 
   default void shutdown() {}
 
+  /**
+   * Whether this plugin may be invoked concurrently from multiple threads.  Layers configured with a
+   * {@code concurrency} greater than one run several workers against the same FIFO; plugins that return {@code false}
+   * (the default) have their calls serialized by the layer, while thread-safe plugins are called in parallel.
+   * @return true if concurrent calls to this plugin are safe.
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
+
+  /**
+   * Whether this plugin understands envelopes flagged with {@link MagpieEnvelope#UNCHANGED_METADATA}, whose contents
+   * leave out everything but a resource's identity.  Layers only hand such envelopes to plugins that return
+   * {@code true}; the default is {@code false}.
+   * @return true if the plugin should receive markers for unchanged resources.
+   */
+  default boolean acceptsUnchanged() {
+    return false;
+  }
+
   /**
    * The class of the configuration object passed to {@link #init(Object, Logger)}
    * @return
@@ -37,4 +37,14 @@ public interface OriginPlugin<T> extends MagpiePlugin<T> {
    * @param emitter The emitter used to pass discovered assets into the discovery pipeline.
    */
   void discover(Session session, Emitter emitter);
+
+  /**
+   * Whether the assets this plugin emits must be handled on its own host, for instance because terminals report back to
+   * it through files.  Asked once the plugin has been initialized; configurations in which the plugin's layer feeds a
+   * Kafka fifo, directly or through the layers downstream of it, are refused.
+   * @return true if downstream layers must run on this host.  False by default.
+   */
+  default boolean requiresLocalDownstream() {
+    return false;
+  }
 }
@@ -21,6 +21,8 @@ package io.openraven.magpie.api;
 
 import org.slf4j.Logger;
 
+import java.util.List;
+
 /**
  * A plugin that represents the terminal operation in the Magpie framework. TerminalPlugins will receive discovered
  * assetts via {@link #accept(MagpieEnvelope)} but are responsible for exporting the data to another system or datastore. This
@@ -36,4 +38,29 @@ public interface TerminalPlugin<T> extends MagpiePlugin<T> {
    *            plugins.
    */
   void accept(MagpieEnvelope env);
+
+  /**
+   * Accept a batch of incoming discovered assets.  The default implementation hands each envelope to
+   * {@link #accept(MagpieEnvelope)} in order; plugins that can export several assets at once (for example in a single
+   * database transaction) may override it.  A failure on one envelope does not prevent the remainder of the batch from
+   * being processed, the first failure is rethrown once the batch completes.
+   * @param envs The discovered assets, in FIFO order.
+   */
+  default void acceptBatch(List<MagpieEnvelope> envs) {
+    RuntimeException failure = null;
+    for (var env : envs) {
+      try {
+        accept(env);
+      } catch (RuntimeException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
 }
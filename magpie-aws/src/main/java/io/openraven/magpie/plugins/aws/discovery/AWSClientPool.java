@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Holds the SDK clients used during a scan.  Every client built through a pooled {@link MagpieAWSClientCreator} uses
+ * the pool's single HTTP transport, so connections and TLS sessions are reused across services and resources, and
+ * clients handed out by {@link MagpieAWSClientCreator#shared} are built once per credentials, region and client type.
+ * Assumed-role credentials are likewise held once per role, so every client for a role shares one session and its
+ * refreshes.  Closing the pool closes all of them.  A pool also holds a {@link BackupJobIndex}, and may hold a
+ * {@link TagIndex}, per credentials and region.
+ */
+public class AWSClientPool implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AWSClientPool.class);
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+  // Backs the creators ClientCreators builds without a pool, e.g. for tests.  Its clients are keyed by credentials,
+  // region and type, so it holds at most one of each for the life of the JVM.  Never closed.
+  static final AWSClientPool GLOBAL = new AWSClientPool();
+
+  private final SdkHttpClient httpClient;
+  private final Map<Object, SdkClient> clients = new ConcurrentHashMap<>();
+  // Kept apart from the other clients, as they're built while configuring one of those, from within its factory.
+  private final Map<Object, StsClient> stsClients = new ConcurrentHashMap<>();
+  private final Map<Object, AwsCredentialsProvider> credentials = new ConcurrentHashMap<>();
+  private final Map<Object, TagIndex> tagIndexes = new ConcurrentHashMap<>();
+  private final Map<Object, BackupJobIndex> backupJobIndexes = new ConcurrentHashMap<>();
+  private boolean tagIndexEnabled = false;
+  @Nullable
+  private RateGovernor rateGovernor;
+
+  public AWSClientPool() {
+    this(DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * @param maxConnections The maximum number of open connections of the shared transport.
+   */
+  public AWSClientPool(int maxConnections) {
+    httpClient = ApacheHttpClient.builder()
+      .maxConnections(maxConnections)
+      .build();
+  }
+
+  /**
+   * @return The transport shared by every client of this pool.  Clients don't close a transport they were given, so
+   * clients built with it may still be closed independently.
+   */
+  public SdkHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  static <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> ClientT build(MagpieAWSClientCreator creator, Supplier<BuilderT> builder, @Nullable Region region) {
+    final var configured = creator.apply(builder.get());
+    return region == null ? configured.build() : configured.region(region).build();
+  }
+
+  @SuppressWarnings("unchecked")
+  <ClientT extends SdkClient> ClientT get(Object key, Supplier<ClientT> factory) {
+    return (ClientT) clients.computeIfAbsent(key, k -> factory.get());
+  }
+
+  /**
+   * @return The STS client cached under the given key, created with the factory on first use.  Unlike {@link #get},
+   * this may be called while a client of the pool is being built.
+   */
+  StsClient stsClient(Object key, Supplier<StsClient> factory) {
+    return stsClients.computeIfAbsent(key, k -> factory.get());
+  }
+
+  /**
+   * @param rateGovernor Paces the requests of every client this pool's creators configure, or null not to pace them.
+   */
+  public void setRateGovernor(@Nullable RateGovernor rateGovernor) {
+    this.rateGovernor = rateGovernor;
+  }
+
+  public Optional<RateGovernor> getRateGovernor() {
+    return Optional.ofNullable(rateGovernor);
+  }
+
+  /**
+   * @param tagIndexEnabled Whether creators of this pool hand out a {@link TagIndex}.
+   */
+  public void setTagIndexEnabled(boolean tagIndexEnabled) {
+    this.tagIndexEnabled = tagIndexEnabled;
+  }
+
+  /**
+   * @return The tag index cached under the given key, created with the factory on first use, or empty if tag indexes
+   * aren't enabled.
+   */
+  Optional<TagIndex> tagIndex(Object key, Supplier<TagIndex> factory) {
+    return tagIndexEnabled ? Optional.of(tagIndexes.computeIfAbsent(key, k -> factory.get())) : Optional.empty();
+  }
+
+  /**
+   * @return The backup job index cached under the given key, created with the factory on first use.
+   */
+  BackupJobIndex backupJobIndex(Object key, Supplier<BackupJobIndex> factory) {
+    return backupJobIndexes.computeIfAbsent(key, k -> factory.get());
+  }
+
+  /**
+   * @return The credentials provider cached under the given key, created with the factory on first use.
+   */
+  AwsCredentialsProvider credentials(Object key, Supplier<AwsCredentialsProvider> factory) {
+    return credentials.computeIfAbsent(key, k -> factory.get());
+  }
+
+  @Override
+  public void close() {
+    // Providers first, as they may refresh through one of the pooled STS clients.
+    credentials.values().forEach(provider -> {
+      if (provider instanceof SdkAutoCloseable) {
+        ((SdkAutoCloseable) provider).close();
+      }
+    });
+    credentials.clear();
+    clients.values().forEach(client -> {
+      try {
+        client.close();
+      } catch (RuntimeException ex) {
+        LOGGER.debug("Couldn't close {}", client.serviceName(), ex);
+      }
+    });
+    clients.clear();
+    stsClients.values().forEach(StsClient::close);
+    stsClients.clear();
+    tagIndexes.clear();
+    backupJobIndexes.clear();
+    httpClient.close();
+  }
+}
@@ -17,6 +17,7 @@
 package io.openraven.magpie.plugins.aws.discovery;
 
 import java.util.List;
+import java.util.Map;
 
 public class AWSDiscoveryConfig {
 
@@ -41,12 +42,65 @@ public class AWSDiscoveryConfig {
     }
   }
 
+  public static class WorkQueueConfig {
+    String role;
+    int idleSeconds = 60;
+    Map<String, Object> properties = Map.of();
+
+    /**
+     * @return {@code coordinator} to publish the scan's units rather than run them, or {@code worker} to run the units
+     * published by a coordinator.
+     */
+    public String getRole() {
+      return role;
+    }
+
+    public void setRole(String role) {
+      this.role = role;
+    }
+
+    /**
+     * @return How long a worker waits for units before stopping.  Defaults to 60 seconds.
+     */
+    public int getIdleSeconds() {
+      return idleSeconds;
+    }
+
+    public void setIdleSeconds(int idleSeconds) {
+      this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * @return Kafka client properties, as for a Kafka fifo, including the {@code topic} units are published to and,
+     * for workers, the consumer {@code group.id}.
+     */
+    public Map<String, Object> getProperties() {
+      return properties;
+    }
+
+    public void setProperties(Map<String, Object> properties) {
+      this.properties = properties;
+    }
+  }
+
   private List<String> assumedRoles = List.of();
   private List<String> services = List.of();
   private List<String> regions = List.of();
   private List<String> ignoredRegions = List.of();
   private String externalId;
   private ProxyRoleConfig proxyRoleConfig;
+  private int parallelism = 1;
+  private int accountConcurrency = 0;
+  private Map<String, Integer> serviceConcurrency = Map.of();
+  private int s3BucketConcurrency = 1;
+  private boolean iamAuthorizationDetails = false;
+  private String iamManagedPolicyCacheFile;
+  private int iamManagedPolicyCacheTtlHours = (int) AWSManagedPolicyCache.DEFAULT_TTL.toHours();
+  private boolean tagIndex = false;
+  private int rateLimit = 0;
+  private String fingerprintFile;
+  private String checkpointDir;
+  private WorkQueueConfig workQueue;
 
 
     /**
@@ -101,4 +155,153 @@ public class AWSDiscoveryConfig {
   public void setProxyRoleConfig(ProxyRoleConfig proxyRoleConfig) {
     this.proxyRoleConfig = proxyRoleConfig;
   }
+
+  /**
+   * @return The number of (account, service, region) discovery units to run at once.  Defaults to 1, discovering
+   * units one after another.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return The maximum number of discovery units to run at once against any single account, or 0 (the default) for
+   * no limit beyond {@link #getParallelism()}.
+   */
+  public int getAccountConcurrency() {
+    return accountConcurrency;
+  }
+
+  public void setAccountConcurrency(int accountConcurrency) {
+    this.accountConcurrency = accountConcurrency;
+  }
+
+  /**
+   * @return Per-service limits on the number of discovery units to run at once, keyed by service name (e.g. "iam").
+   * Services that aren't listed are only limited by {@link #getParallelism()}.
+   */
+  public Map<String, Integer> getServiceConcurrency() {
+    return serviceConcurrency;
+  }
+
+  public void setServiceConcurrency(Map<String, Integer> serviceConcurrency) {
+    this.serviceConcurrency = serviceConcurrency == null ? Map.of() : serviceConcurrency;
+  }
+
+  /**
+   * @return The number of buckets S3 discovery enriches at once within each (account, region) unit.  Defaults to 1,
+   * enriching buckets one after another.
+   */
+  public int getS3BucketConcurrency() {
+    return s3BucketConcurrency;
+  }
+
+  public void setS3BucketConcurrency(int s3BucketConcurrency) {
+    this.s3BucketConcurrency = s3BucketConcurrency;
+  }
+
+  /**
+   * @return Whether IAM users, groups, roles and policy documents are discovered in bulk with
+   * GetAccountAuthorizationDetails, rather than with several calls per entity.  Requires the
+   * iam:GetAccountAuthorizationDetails permission; discovery falls back to per-entity calls without it.
+   */
+  public boolean isIamAuthorizationDetails() {
+    return iamAuthorizationDetails;
+  }
+
+  public void setIamAuthorizationDetails(boolean iamAuthorizationDetails) {
+    this.iamAuthorizationDetails = iamAuthorizationDetails;
+  }
+
+  /**
+   * @return A file in which AWS-managed IAM policy documents are kept between runs, or null (the default) to share
+   * them between the accounts of a run only.
+   */
+  public String getIamManagedPolicyCacheFile() {
+    return iamManagedPolicyCacheFile;
+  }
+
+  public void setIamManagedPolicyCacheFile(String iamManagedPolicyCacheFile) {
+    this.iamManagedPolicyCacheFile = iamManagedPolicyCacheFile;
+  }
+
+  /**
+   * @return How long a cached AWS-managed IAM policy document is used before it is fetched again.  Defaults to 24.
+   */
+  public int getIamManagedPolicyCacheTtlHours() {
+    return iamManagedPolicyCacheTtlHours;
+  }
+
+  public void setIamManagedPolicyCacheTtlHours(int iamManagedPolicyCacheTtlHours) {
+    this.iamManagedPolicyCacheTtlHours = iamManagedPolicyCacheTtlHours;
+  }
+
+  /**
+   * @return Whether each (account, region)'s tags are fetched in bulk with the Resource Groups Tagging API, and looked
+   * up there before asking a service for a resource's tags.  Requires the tag:GetResources permission; discovery falls
+   * back to per-resource calls without it.
+   */
+  public boolean isTagIndex() {
+    return tagIndex;
+  }
+
+  public void setTagIndex(boolean tagIndex) {
+    this.tagIndex = tagIndex;
+  }
+
+  /**
+   * @return The requests per second each (account, region, service) may make, lowered while AWS throttles them and
+   * raised back once it stops.  Throttled requests are retried more persistently when set.  Defaults to 0, leaving
+   * requests unpaced.
+   */
+  public int getRateLimit() {
+    return rateLimit;
+  }
+
+  public void setRateLimit(int rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  /**
+   * @return A file in which each resource's fingerprint is kept between scans, for incremental discovery: resources
+   * that haven't changed since the previous scan are emitted as markers that only record they are still present.
+   * Null (the default) to emit every resource in full.  Terminals report markers for assets they don't hold through a
+   * file beside this one, so the assets must not pass through a Kafka fifo on their way to them.
+   */
+  public String getFingerprintFile() {
+    return fingerprintFile;
+  }
+
+  public void setFingerprintFile(String fingerprintFile) {
+    this.fingerprintFile = fingerprintFile;
+  }
+
+  /**
+   * @return A directory in which each session's completed (account, service, region) units are recorded, so that a
+   * run resumed with the same session id skips them.  Null (the default) not to record them.  Ignored with a
+   * {@link #getWorkQueue() work queue}, which hands the units a process didn't finish to the others.
+   */
+  public String getCheckpointDir() {
+    return checkpointDir;
+  }
+
+  public void setCheckpointDir(String checkpointDir) {
+    this.checkpointDir = checkpointDir;
+  }
+
+  /**
+   * @return Spreads the scan's units over several processes through a Kafka topic, with one coordinator publishing them
+   * and any number of workers running them.  Null (the default) to run every unit in this process.
+   */
+  public WorkQueueConfig getWorkQueue() {
+    return workQueue;
+  }
+
+  public void setWorkQueue(WorkQueueConfig workQueue) {
+    this.workQueue = workQueue;
+  }
 }
@@ -23,12 +23,24 @@ import io.openraven.magpie.api.OriginPlugin;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.plugins.aws.discovery.services.*;
 import io.sentry.Sentry;
+import jakarta.annotation.Nullable;
 import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeRegionsRequest;
 import software.amazon.awssdk.services.sts.StsClient;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -40,6 +52,10 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
     .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
     .findAndRegisterModules();
 
+  // Regions are listed from a region that every commercial account has enabled.
+  private static final Region REGION_LISTING_REGION = Region.US_EAST_1;
+  private static final String NOT_OPTED_IN = "not-opted-in";
+
   private static final List<AWSDiscovery> DISCOVERY_LIST = List.of(
     new AthenaDiscovery(),
     new BatchDiscovery(),
@@ -89,46 +105,182 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
 
   private Logger logger;
   private AWSDiscoveryConfig config;
+  private AWSManagedPolicyCache managedPolicyCache;
 
   @Override
   public void discover(Session session, Emitter emitter) {
 
     final var enabledPlugins = DISCOVERY_LIST.stream().filter(p -> isEnabled(p.service())).collect(Collectors.toList());
-
-    if (config.getAssumedRoles() == null || config.getAssumedRoles().isEmpty()) {
+    final var units = new ArrayList<DiscoveryScheduler.WorkUnit>();
+    final var useLocalCredentials = config.getAssumedRoles() == null || config.getAssumedRoles().isEmpty();
+    String localAccount = null;
+    if (useLocalCredentials) {
       try(final var client = StsClient.create()) {
-        final var account = client.getCallerIdentity().account();
-        enabledPlugins.forEach(plugin -> {
-          final var regions = getRegionsForDiscovery(plugin);
-          regions.forEach(region -> {
-            try {
-              final var clientCreator = ClientCreators.localClientCreator(region);
-              plugin.discoverWrapper(MAPPER, session, region, emitter, logger, account, clientCreator);
-            } catch (Exception ex) {
-              logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
-              logger.debug("Details", ex);
-            }
-          });
-        });
+        localAccount = client.getCallerIdentity().account();
+      }
+    }
+    // Clients are shared by all units for the duration of this scan, and closed once it completes.
+    final var clientPool = new AWSClientPool(Math.max(AWSClientPool.DEFAULT_MAX_CONNECTIONS, config.getParallelism() * Math.max(4, config.getS3BucketConcurrency())));
+    clientPool.setTagIndexEnabled(config.isTagIndex());
+    if (config.getRateLimit() > 0) {
+      clientPool.setRateGovernor(new RateGovernor(config.getRateLimit()));
+    }
+    final var workQueue = config.getWorkQueue() == null ? null : new DiscoveryWorkQueue(config.getWorkQueue().getProperties(),
+      Duration.ofSeconds(config.getWorkQueue().getIdleSeconds()));
+    final var workRole = workQueue == null ? null : DiscoveryWorkQueue.role(config.getWorkQueue().getRole());
+    // A coordinator emits nothing, and saving its empty fingerprints would have the next scan emit everything in full.
+    final var fingerprints = config.getFingerprintFile() == null || workRole == DiscoveryWorkQueue.Role.COORDINATOR
+      ? null : new FingerprintStore(Path.of(config.getFingerprintFile()));
+    // Workers emit for the coordinator's sessions, for which the fingerprints are registered as units adopt them.
+    final var fingerprintSessions = new ConcurrentHashMap<String, Session>();
+    final Consumer<Session> useFingerprints = unitSession -> {
+      if (fingerprints != null && fingerprintSessions.putIfAbsent(unitSession.getId(), unitSession) == null) {
+        VersionedMagpieEnvelopeProvider.registerFingerprintStore(unitSession, fingerprints);
       }
+    };
+    useFingerprints.accept(session);
+    // Units completed by an earlier run of this session are skipped, and the rest recorded as they complete.  Not
+    // with a work queue, which redelivers the units a process didn't finish to the others.
+    final var checkpoint = config.getCheckpointDir() == null || workRole != null
+      ? null : new DiscoveryCheckpoint(Path.of(config.getCheckpointDir()), session.getId());
+    final var previouslyCompleted = checkpoint == null ? 0 : checkpoint.getCompletedCount();
+
+    if (useLocalCredentials) {
+      final var account = localAccount;
+      final var disabledRegions = getDisabledRegions(ClientCreators.localClientCreator(REGION_LISTING_REGION, clientPool));
+      enabledPlugins.forEach(plugin -> {
+        final var regions = getRegionsForDiscovery(plugin).stream()
+          .filter(region -> !disabledRegions.contains(region.id()))
+          .filter(region -> !isCompleted(checkpoint, account, plugin.service(), region))
+          .collect(Collectors.toList());
+        regions.forEach(region -> units.add(new DiscoveryScheduler.WorkUnit(account, plugin.service(), region.id(), session, unitSession -> {
+          try {
+            useFingerprints.accept(unitSession);
+            final var clientCreator = ClientCreators.localClientCreator(region, clientPool);
+            final var failures = DiscoveryExceptions.countFailures(() ->
+              plugin.discoverWrapper(MAPPER, unitSession, region, emitter, logger, account, clientCreator));
+            complete(checkpoint, account, plugin.service(), region, failures, logger);
+          } catch (Exception ex) {
+            logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
+            logger.debug("Details", ex);
+          }
+        })));
+      });
     } else {
-      config.getAssumedRoles().forEach(role -> {
-        enabledPlugins.forEach(plugin -> {
-          final var regions = getRegionsForDiscovery(plugin);
-          regions.forEach(region -> {
-            final var clientCreator = ClientCreators.assumeRoleCreator(region, role, config.getExternalId(), config.getProxyRoleConfig());
-            try (final var client = clientCreator.apply(StsClient.builder()).build()) {
-              final String account = client.getCallerIdentity().account();
-              logger.info("Discovering cross-account {}:{} using role {}", plugin.service(), region,   role);
-              plugin.discoverWrapper(MAPPER, session, region, emitter, logger, account, clientCreator);
-            } catch (Exception ex) {
-              logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
-              logger.debug("Details", ex);
+      // Units are ordered role-innermost so that consecutive units belong to different accounts, which keeps
+      // per-account caps from stalling the scheduler.
+      final var roleAccounts = new ConcurrentHashMap<String, String>();
+      final var roleDisabledRegions = new ConcurrentHashMap<String, Set<String>>();
+      enabledPlugins.forEach(plugin -> {
+        final var regions = getRegionsForDiscovery(plugin);
+        regions.forEach(region -> config.getAssumedRoles().stream()
+          .filter(role -> !isCompleted(checkpoint, role, plugin.service(), region))
+          .forEach(role -> units.add(new DiscoveryScheduler.WorkUnit(role, plugin.service(), region.id(), session, unitSession -> {
+          useFingerprints.accept(unitSession);
+          final var clientCreator = ClientCreators.assumeRoleCreator(region, role, config.getExternalId(), config.getProxyRoleConfig(), clientPool);
+          try {
+            // Listed by the first unit for each role, rather than before dispatch, so that roles are looked at in
+            // parallel.  Not listed under the map's lock, which would hold up units of unrelated roles; units that race
+            // each list the regions and the first result is kept.
+            var disabledRegions = roleDisabledRegions.get(role);
+            if (disabledRegions == null) {
+              final var listed = getDisabledRegions(
+                ClientCreators.assumeRoleCreator(REGION_LISTING_REGION, role, config.getExternalId(), config.getProxyRoleConfig(), clientPool));
+              disabledRegions = Objects.requireNonNullElse(roleDisabledRegions.putIfAbsent(role, listed), listed);
             }
-          });
-        });
+            if (disabledRegions.contains(region.id())) {
+              logger.debug("Skipping {}:{}, which role {} hasn't opted in to", plugin.service(), region, role);
+              complete(checkpoint, role, plugin.service(), region);
+              return;
+            }
+            // Resolved by the first unit for each role, outside the map's lock as the regions are; a failure isn't
+            // cached, so later units for the role retry.
+            var account = roleAccounts.get(role);
+            if (account == null) {
+              final var resolved = clientCreator.shared(StsClient.class, StsClient::builder).getCallerIdentity().account();
+              account = Objects.requireNonNullElse(roleAccounts.putIfAbsent(role, resolved), resolved);
+            }
+            final String unitAccount = account;
+            logger.info("Discovering cross-account {}:{} using role {}", plugin.service(), region,   role);
+            final var failures = DiscoveryExceptions.countFailures(() ->
+              plugin.discoverWrapper(MAPPER, unitSession, region, emitter, logger, unitAccount, clientCreator));
+            complete(checkpoint, role, plugin.service(), region, failures, logger);
+          } catch (Exception ex) {
+            logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
+            logger.debug("Details", ex);
+          }
+        }))));
       });
     }
+
+    try {
+      final var scheduler = new DiscoveryScheduler(config.getParallelism(), config.getAccountConcurrency(), config.getServiceConcurrency());
+      if (workRole == DiscoveryWorkQueue.Role.COORDINATOR) {
+        workQueue.publish(session, units);
+      } else if (workRole == DiscoveryWorkQueue.Role.WORKER) {
+        logger.info("Discovering units published to the work queue with parallelism {}", config.getParallelism());
+        workQueue.consume(units, scheduler, config.getParallelism());
+      } else {
+        logger.info("Discovering {} units with parallelism {}", units.size(), config.getParallelism());
+        scheduler.run(units);
+      }
+      // Kept while any unit failed, so that resuming the session retries just those.
+      if (checkpoint != null && checkpoint.getCompletedCount() >= previouslyCompleted + units.size()) {
+        checkpoint.delete();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      logger.warn("Discovery interrupted");
+    } finally {
+      clientPool.close();
+      managedPolicyCache.save();
+      fingerprintSessions.values().forEach(VersionedMagpieEnvelopeProvider::unregisterFingerprintStore);
+      if (fingerprints != null) {
+        fingerprints.save();
+      }
+    }
+    logger.debug("Duplicate calls answered from a per-resource memo so far: {}", CallMemo.getAvoidedCalls());
+    clientPool.getRateGovernor().ifPresent(governor -> logger.info("Throttled requests by service: {}", governor.getThrottles()));
+  }
+
+  private static boolean isCompleted(@Nullable DiscoveryCheckpoint checkpoint, String account, String service, Region region) {
+    return checkpoint != null && checkpoint.isCompleted(account, service, region.id());
+  }
+
+  private static void complete(@Nullable DiscoveryCheckpoint checkpoint, String account, String service, Region region) {
+    if (checkpoint != null) {
+      checkpoint.complete(account, service, region.id());
+    }
+  }
+
+  // Units whose errors were handled rather than thrown are left to be retried when the session is resumed.
+  private static void complete(@Nullable DiscoveryCheckpoint checkpoint, String account, String service, Region region, int failures, Logger logger) {
+    if (failures == 0) {
+      complete(checkpoint, account, service, region);
+    } else if (checkpoint != null) {
+      logger.warn("Not checkpointing {}:{} for {}, {} of its calls failed", service, region, account, failures);
+    }
+  }
+
+  /**
+   * @return The opt-in regions the creator's account hasn't enabled.  Calls there fail, so they aren't attempted.
+   * Empty, so that every region is attempted, if the account's regions can't be listed.
+   */
+  private Set<String> getDisabledRegions(MagpieAWSClientCreator clientCreator) {
+    try {
+      final var regions = clientCreator.shared(Ec2Client.class, Ec2Client::builder)
+        .describeRegions(DescribeRegionsRequest.builder().allRegions(true).build())
+        .regions();
+      final var disabled = regions.stream()
+        .filter(region -> NOT_OPTED_IN.equals(region.optInStatus()))
+        .map(region -> region.regionName())
+        .collect(Collectors.toSet());
+      logger.debug("Not discovering regions that aren't enabled: {}", disabled);
+      return disabled;
+    } catch (SdkServiceException | SdkClientException ex) {
+      logger.warn("Couldn't list enabled regions, discovering all of them: {}", ex.getMessage());
+      return Set.of();
+    }
   }
 
   protected List<Region> getRegionsForDiscovery(AWSDiscovery plugin) {
@@ -173,6 +325,17 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
   public void init(AWSDiscoveryConfig config, Logger logger) {
     this.logger = logger;
     this.config = config;
+    this.managedPolicyCache = new AWSManagedPolicyCache(
+      config.getIamManagedPolicyCacheFile() == null ? null : Path.of(config.getIamManagedPolicyCacheFile()),
+      Duration.ofHours(config.getIamManagedPolicyCacheTtlHours()));
+    DISCOVERY_LIST.forEach(p -> {
+      if (p instanceof S3Discovery) {
+        ((S3Discovery) p).setBucketConcurrency(config.getS3BucketConcurrency());
+      } else if (p instanceof IAMDiscovery) {
+        ((IAMDiscovery) p).setBulkAuthorizationDetails(config.isIamAuthorizationDetails());
+        ((IAMDiscovery) p).setManagedPolicyCache(managedPolicyCache);
+      }
+    });
 
     try {
       Sentry.init();
@@ -181,6 +344,13 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
     }
   }
 
+  // Terminals report markers for assets they don't hold through a file beside the fingerprints, which they can only
+  // reach on this host.
+  @Override
+  public boolean requiresLocalDownstream() {
+    return config.getFingerprintFile() != null;
+  }
+
   @Override
   public Class<AWSDiscoveryConfig> configType() {
     return AWSDiscoveryConfig.class;
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default-version documents of AWS-managed IAM policies ({@code arn:aws:iam::aws:policy/...}), which are the same in
+ * every account.  Entries are keyed by policy ARN and version id, so a new default version is simply a miss, and
+ * expire after a TTL so that the cache doesn't grow with versions that are no longer used.  The cache is shared by all
+ * accounts of a scan and, when given a file, kept across runs.
+ */
+public class AWSManagedPolicyCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AWSManagedPolicyCache.class);
+  private static final ObjectMapper FILE_MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, Entry>> FILE_TYPE = new TypeReference<>() {};
+
+  public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+  @Nullable
+  private final Path file;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * @param file Where to keep the cache between runs, or null to keep it in memory only.  Entries are read from the
+   * file, if it exists, and written by {@link #save()}.
+   */
+  public AWSManagedPolicyCache(@Nullable Path file, Duration ttl) {
+    this(file, ttl, Clock.systemUTC());
+  }
+
+  AWSManagedPolicyCache(@Nullable Path file, Duration ttl, Clock clock) {
+    this.file = file;
+    this.ttl = ttl;
+    this.clock = clock;
+    load();
+  }
+
+  public static boolean isAwsManaged(String policyArn) {
+    // Matches every partition, e.g. arn:aws-cn:iam::aws:policy/ReadOnlyAccess
+    return policyArn.contains(":iam::aws:policy/");
+  }
+
+  /**
+   * @return The cached, still URL-encoded, document of the given policy version, unless missing or expired.
+   */
+  public Optional<String> getDocument(String policyArn, String versionId) {
+    return find(policyArn, versionId).map(Entry::getDocument);
+  }
+
+  /**
+   * @return As {@link #getDocument}, parsed.  The parsed document is shared by every caller and must not be modified.
+   */
+  public Optional<JsonNode> getParsedDocument(ObjectMapper mapper, String policyArn, String versionId) {
+    return find(policyArn, versionId).map(entry -> entry.parsed(mapper));
+  }
+
+  /**
+   * @return Whether no policy documents are cached yet, e.g. on the first scan without a cache file.
+   */
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  public void put(String policyArn, String versionId, String document) {
+    final var entry = new Entry();
+    entry.setVersionId(versionId);
+    entry.setDocument(document);
+    entry.setFetchedAt(clock.millis());
+    entries.put(policyArn, entry);
+  }
+
+  /**
+   * Writes the unexpired entries to the cache file, if there is one.  Failures are logged, since the cache is only an
+   * optimization.
+   */
+  public void save() {
+    if (file == null) {
+      return;
+    }
+    final var unexpired = new HashMap<String, Entry>();
+    entries.forEach((arn, entry) -> {
+      if (!isExpired(entry)) {
+        unexpired.put(arn, entry);
+      }
+    });
+    try {
+      if (file.toAbsolutePath().getParent() != null) {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+      }
+      // Written aside and moved into place so that a concurrent or interrupted run never sees a partial file.
+      final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      FILE_MAPPER.writeValue(tmp.toFile(), unexpired);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't save the AWS-managed policy cache to {}: {}", file, ex.getMessage());
+    }
+  }
+
+  private void load() {
+    if (file == null || !Files.exists(file)) {
+      return;
+    }
+    try {
+      final Map<String, Entry> loaded = FILE_MAPPER.readValue(file.toFile(), FILE_TYPE);
+      loaded.forEach((arn, entry) -> {
+        if (!isExpired(entry)) {
+          entries.put(arn, entry);
+        }
+      });
+      LOGGER.debug("Loaded {} AWS-managed policies from {}", entries.size(), file);
+    } catch (IOException ex) {
+      LOGGER.warn("Ignoring unreadable AWS-managed policy cache {}: {}", file, ex.getMessage());
+    }
+  }
+
+  private Optional<Entry> find(String policyArn, String versionId) {
+    return Optional.ofNullable(entries.get(policyArn))
+      .filter(entry -> entry.getVersionId().equals(versionId) && !isExpired(entry));
+  }
+
+  private boolean isExpired(Entry entry) {
+    return clock.millis() - entry.getFetchedAt() > ttl.toMillis();
+  }
+
+  public static class Entry {
+    private String versionId;
+    private String document;
+    private long fetchedAt;
+    private transient volatile JsonNode parsed;
+
+    public String getVersionId() {
+      return versionId;
+    }
+
+    public void setVersionId(String versionId) {
+      this.versionId = versionId;
+    }
+
+    public String getDocument() {
+      return document;
+    }
+
+    public void setDocument(String document) {
+      this.document = document;
+    }
+
+    public long getFetchedAt() {
+      return fetchedAt;
+    }
+
+    public void setFetchedAt(long fetchedAt) {
+      this.fetchedAt = fetchedAt;
+    }
+
+    private JsonNode parsed(ObjectMapper mapper) {
+      // Racing threads may each parse the document once; either result is equally valid.
+      if (parsed == null) {
+        parsed = AWSUtils.parsePolicyDocument(mapper, document);
+      }
+      return parsed;
+    }
+  }
+}
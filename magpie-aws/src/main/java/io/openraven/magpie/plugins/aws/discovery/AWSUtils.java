@@ -70,6 +70,10 @@ public class AWSUtils {
       resp.accept(ret);
     } catch (SdkServiceException ex) {
       if (ex.statusCode() >= 400 && ex.statusCode() < 500) {
+        if (ex.isThrottlingException()) {
+          // Unlike other client errors, a later run may get the response.
+          DiscoveryExceptions.recordFailure();
+        }
         noresp.accept(NULL_NODE);
       } else {
         throw ex;
@@ -208,60 +212,57 @@ public class AWSUtils {
 
   public static GetMetricStatisticsResponse getCloudwatchMetricStatistics(String regionID, String namespace, String metric, Statistic statistic, List<Dimension> dimensions, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(CloudWatchClient.builder()).region(Region.of(regionID)).build()) {
+    final var client = clientCreator.shared(CloudWatchClient.class, Region.of(regionID), CloudWatchClient::builder);
 
-      // The start time is t-minus 2 days (48 hours) because an asset is considered "active" if it's been updated within
-      // 48hrs, otherwise it is considered "terminated/deleted", so start capturing at the longest possible period
-      // (even though should be discovering more frequently). TODO: maybe pull these constants out to config?
-      Instant startTS = Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
+    // The start time is t-minus 2 days (48 hours) because an asset is considered "active" if it's been updated within
+    // 48hrs, otherwise it is considered "terminated/deleted", so start capturing at the longest possible period
+    // (even though should be discovering more frequently). TODO: maybe pull these constants out to config?
+    Instant startTS = Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
 
-      // the end time is t-minus 1 hour to account for delay in some services pushing data to cloudwatch - metrics
-      // earlier than this may not be available or unreliable (due to aggregations)
-      Instant endTS = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
+    // the end time is t-minus 1 hour to account for delay in some services pushing data to cloudwatch - metrics
+    // earlier than this may not be available or unreliable (due to aggregations)
+    Instant endTS = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
 
-      GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
-        .endTime(endTS)
-        .namespace(namespace).period(3600).metricName(metric).statistics(statistic)
-        .dimensions(dimensions).build();
+    GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
+      .endTime(endTS)
+      .namespace(namespace).period(3600).metricName(metric).statistics(statistic)
+      .dimensions(dimensions).build();
 
-      return client.getMetricStatistics(request);
-    }
+    return client.getMetricStatistics(request);
   }
 
   public static GetMetricStatisticsResponse getStaleDataCloudwatchMetrics(String regionID, String namespace, String metric, Statistic statistic, List<Dimension> dimensions, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(CloudWatchClient.builder()).region(Region.of(regionID)).build()) {
-      Instant startTS = Instant.now().minus(30, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
-      Instant endTS = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
+    final var client = clientCreator.shared(CloudWatchClient.class, Region.of(regionID), CloudWatchClient::builder);
+    Instant startTS = Instant.now().minus(30, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
+    Instant endTS = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
 
-      GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
-        .endTime(endTS)
-        .namespace(namespace).period(86400).metricName(metric).statistics(statistic)
-        .dimensions(dimensions).build();
+    GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
+      .endTime(endTS)
+      .namespace(namespace).period(86400).metricName(metric).statistics(statistic)
+      .dimensions(dimensions).build();
 
-      return client.getMetricStatistics(request);
-    }
+    return client.getMetricStatistics(request);
   }
 
   public static List<String> getS3AvailableSizeMetrics(String regionID, String bucketName, MagpieAWSClientCreator clientCreator) {
 
-    try (CloudWatchClient client = clientCreator.apply(CloudWatchClient.builder()).region(Region.of(regionID)).build()) {
-      List<String> availableMetrics = new ArrayList<>();
-      List<DimensionFilter> dimensions = Collections.singletonList(DimensionFilter.builder().name("BucketName").value(bucketName).build());
-
-      final var request = ListMetricsRequest.builder()
-        .namespace("AWS/S3")
-        .metricName("BucketSizeBytes")
-        .dimensions(dimensions)
-        .build();
-      ListMetricsResponse response = client.listMetrics(request);
-      response.metrics()
-        .forEach(metric ->
-          metric.dimensions().stream()
-            .filter(dimension -> "StorageType".equals(dimension.name()))
-            .map(Dimension::value)
-            .forEach(availableMetrics::add));
-      return availableMetrics;
-    }
+    final var client = clientCreator.shared(CloudWatchClient.class, Region.of(regionID), CloudWatchClient::builder);
+    List<String> availableMetrics = new ArrayList<>();
+    List<DimensionFilter> dimensions = Collections.singletonList(DimensionFilter.builder().name("BucketName").value(bucketName).build());
+
+    final var request = ListMetricsRequest.builder()
+      .namespace("AWS/S3")
+      .metricName("BucketSizeBytes")
+      .dimensions(dimensions)
+      .build();
+    ListMetricsResponse response = client.listMetrics(request);
+    response.metrics()
+      .forEach(metric ->
+        metric.dimensions().stream()
+          .filter(dimension -> "StorageType".equals(dimension.name()))
+          .map(Dimension::value)
+          .forEach(availableMetrics::add));
+    return availableMetrics;
   }
 
   public static JsonNode parsePolicyDocument(ObjectMapper mapper, String policyDocument) {
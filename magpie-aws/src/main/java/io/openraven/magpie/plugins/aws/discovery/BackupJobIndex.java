@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.backup.BackupClient;
+import software.amazon.awssdk.services.backup.model.BackupJob;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The completed AWS Backup jobs of an (account, region), keyed by resource ARN.  They are listed with a few unfiltered
+ * ListBackupJobs pages the first time any resource is looked up, rather than with a filtered listing per resource.
+ */
+public class BackupJobIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BackupJobIndex.class);
+
+  private static final int MAX_ATTEMPTS = 5;
+
+  private final BackupClient client;
+  private volatile Map<String, List<BackupJob>> jobs;
+  private volatile boolean failed;
+
+  public BackupJobIndex(BackupClient client) {
+    this.client = client;
+  }
+
+  /**
+   * @return The resource's jobs, as {@link BackupUtils#listBackupJobs} would list them, or empty if the region's jobs
+   * couldn't be listed.
+   */
+  public Optional<List<BackupJob.Builder>> get(String arn) {
+    if (jobs == null) {
+      load();
+    }
+    if (failed) {
+      return Optional.empty();
+    }
+    final var builders = new LinkedList<BackupJob.Builder>();
+    jobs.getOrDefault(arn, List.of()).forEach(job -> builders.add(job.toBuilder()));
+    return Optional.of(builders);
+  }
+
+  private synchronized void load() {
+    if (jobs != null) {
+      return;
+    }
+    final var loaded = new HashMap<String, List<BackupJob>>();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        loaded.clear();
+        client.listBackupJobsPaginator(BackupUtils.completedJobsRequest().build())
+          .forEach(response -> response.backupJobs()
+            .forEach(job -> loaded.computeIfAbsent(job.resourceArn(), arn -> new ArrayList<>()).add(job)));
+        LOGGER.debug("Indexed the backup jobs of {} resources", loaded.size());
+        break;
+      } catch (SdkClientException ex) {
+        if (attempt < MAX_ATTEMPTS) {
+          LOGGER.warn("Couldn't list backup jobs, retrying {} more times", MAX_ATTEMPTS - attempt);
+          continue;
+        }
+        fail(ex);
+        break;
+      } catch (SdkServiceException ex) {
+        fail(ex);
+        break;
+      }
+    }
+    jobs = loaded;
+  }
+
+  private void fail(Exception ex) {
+    // Lookups then miss, and each resource's jobs are listed separately as they would be without an index.
+    LOGGER.warn("Couldn't list backup jobs, they will be listed per resource: {}", ex.getMessage());
+    failed = true;
+  }
+}
@@ -36,21 +36,25 @@ public class BackupUtils {
     private static final Period HISTORY = Period.ofDays(45);
     public static final String UNSUPPORTED_RESOURCE_TYPE_STRING_INDICATOR = "Unsupported resource type";
 
+    /**
+     * @return The resource's completed backup jobs of the last 45 days, from the creator's {@link BackupJobIndex} when it
+     * has one, and otherwise listed for this resource alone.
+     */
     public static List<BackupJob.Builder> listBackupJobs(String arn, Region region, MagpieAWSClientCreator clientCreator, Logger logger) {
+        final var indexed = clientCreator.backupJobIndex(region).flatMap(index -> index.get(arn));
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+
         var retries = new AtomicInteger(5);
         List<BackupJob.Builder> jobs = new LinkedList<>();
         while (retries.get() > 0) {
             try {
-                try (final var client = clientCreator.apply(BackupClient.builder()).region(region).build()) {
-                    final var builder = ListBackupJobsRequest.builder()
-                            .byResourceArn(arn)
-                            .byCreatedAfter(Instant.now().minus(HISTORY))
-                            .maxResults(1000)
-                            .byState(BackupJobState.COMPLETED);
-                    final var result = client.listBackupJobsPaginator(builder.build());
-                    result.forEach(response -> jobs.addAll(response.backupJobs().stream().map(BackupJob::toBuilder).collect(Collectors.toList())));
-                    break;
-                }
+                final var client = clientCreator.shared(BackupClient.class, region, BackupClient::builder);
+                final var builder = completedJobsRequest().byResourceArn(arn);
+                final var result = client.listBackupJobsPaginator(builder.build());
+                result.forEach(response -> jobs.addAll(response.backupJobs().stream().map(BackupJob::toBuilder).collect(Collectors.toList())));
+                break;
             } catch (SdkClientException ex) {
 
                 if (retries.get() == 0) {
@@ -73,4 +77,11 @@ public class BackupUtils {
         }
         return jobs;
     }
+
+    static ListBackupJobsRequest.Builder completedJobsRequest() {
+        return ListBackupJobsRequest.builder()
+                .byCreatedAfter(Instant.now().minus(HISTORY))
+                .maxResults(1000)
+                .byState(BackupJobState.COMPLETED);
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import software.amazon.awssdk.core.SdkRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Memoizes SDK calls made while enriching a single resource, so that several derived fields needing the same response
+ * (e.g. a bucket's ACL, read both for the ACL itself and to decide whether the bucket is public) share one API call.
+ * Calls are keyed by their request, and since SDK requests compare by value, the request type identifies the
+ * operation.  Failures are memoized as well and rethrown to every caller, so handling stays the same as without the
+ * memo, e.g. inside {@link AWSUtils#getAwsResponse}.
+ * <p>
+ * A memo should be created per resource and dropped once it has been emitted, or per listing where each resource's
+ * enrichment repeats the same region-wide call.  It is not thread-safe.
+ */
+public class CallMemo {
+
+  private static final Map<String, LongAdder> AVOIDED = new ConcurrentHashMap<>();
+
+  private final Map<SdkRequest, Object> responses = new HashMap<>();
+
+  @SuppressWarnings("unchecked")
+  public <RequestT extends SdkRequest, ResponseT> ResponseT call(RequestT request, Function<RequestT, ResponseT> fn) {
+    if (responses.containsKey(request)) {
+      AVOIDED.computeIfAbsent(operation(request), k -> new LongAdder()).increment();
+      return (ResponseT) unwrap(responses.get(request));
+    }
+
+    Object result;
+    try {
+      result = fn.apply(request);
+    } catch (RuntimeException ex) {
+      result = new Failure(ex);
+    }
+    responses.put(request, result);
+    return (ResponseT) unwrap(result);
+  }
+
+  /**
+   * @return The number of calls each memo in this JVM has answered from a previous response, keyed by operation, e.g.
+   * {@code GetBucketAcl}.
+   */
+  public static Map<String, Long> getAvoidedCalls() {
+    final var counts = new TreeMap<String, Long>();
+    AVOIDED.forEach((operation, count) -> counts.put(operation, count.sum()));
+    return counts;
+  }
+
+  private static String operation(SdkRequest request) {
+    final var name = request.getClass().getSimpleName();
+    // Generated request classes are named after their operation, e.g. GetBucketAclRequest.
+    return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+  }
+
+  private static Object unwrap(Object result) {
+    if (result instanceof Failure) {
+      throw ((Failure) result).exception;
+    }
+    return result;
+  }
+
+  private static class Failure {
+    private final RuntimeException exception;
+
+    private Failure(RuntimeException exception) {
+      this.exception = exception;
+    }
+  }
+}
@@ -2,20 +2,31 @@ package io.openraven.magpie.plugins.aws.discovery;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.builder.SdkSyncClientBuilder;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.backup.BackupClient;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
 import software.amazon.awssdk.services.sts.StsClient;
 import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
 import software.amazon.awssdk.services.sts.model.AssumeRoleRequest;
 
 import jakarta.annotation.Nullable;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 public class ClientCreators {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ClientCreators.class);
 
+  // Pool key component for clients using the local credentials chain rather than an assumed role.
+  private static final String LOCAL_CREDENTIALS = "local";
+
   //This client does not need to be recreated on every request.
   public static final StsClient localStsClient = StsClient.create();
 
@@ -28,6 +39,14 @@ public class ClientCreators {
    * @return A new ClientCreator instanced used for assume role based discovery.
    */
   public static MagpieAWSClientCreator assumeRoleCreator(final Region region, final String roleArn, @Nullable  String externalId, @Nullable AWSDiscoveryConfig.ProxyRoleConfig proxyRoleConfig) {
+    return assumeRoleCreator(region, roleArn, externalId, proxyRoleConfig, AWSClientPool.GLOBAL);
+  }
+
+  /**
+   * As {@link #assumeRoleCreator(Region, String, String, AWSDiscoveryConfig.ProxyRoleConfig)}, with clients built
+   * on the transport of, and shared through, the given pool.
+   */
+  public static MagpieAWSClientCreator assumeRoleCreator(final Region region, final String roleArn, @Nullable  String externalId, @Nullable AWSDiscoveryConfig.ProxyRoleConfig proxyRoleConfig, AWSClientPool pool) {
     return new MagpieAWSClientCreator(){
       @Override
       public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT, ClientT> builder) {
@@ -35,48 +54,89 @@ public class ClientCreators {
         if (magpieAwsEndpoint != null) {
           builder.endpointOverride(URI.create(magpieAwsEndpoint));
         }
+        useSharedTransport(builder, pool);
+        governRate(builder, pool, roleArn);
+        return builder.credentialsProvider(assumeRoleCredentials(roleArn, externalId, proxyRoleConfig, pool)).region(region);
+      }
 
-        var stsClient = localStsClient;
-
-        if(proxyRoleConfig != null) {
+      @Override
+      public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT shared(Class<ClientT> type, @Nullable Region clientRegion, Supplier<BuilderT> builder) {
+        final var effectiveRegion = clientRegion == null ? region : clientRegion;
+        return pool.get(Arrays.asList(roleArn, externalId, effectiveRegion, type), () -> AWSClientPool.build(this, builder, effectiveRegion));
+      }
 
-          final var arn = proxyRoleConfig.getArn();
-          final var proxyRoleConfigExternalId = proxyRoleConfig.getExternalId();
+      @Override
+      public Optional<TagIndex> tagIndex() {
+        return pool.tagIndex(Arrays.asList(roleArn, externalId, region), () -> new TagIndex(shared(ResourceGroupsTaggingApiClient.class, ResourceGroupsTaggingApiClient::builder)));
+      }
 
-          LOGGER.debug("Using proxyRoleConfig with arn={}, externalId={} connecting to roleArn={}, externalId={}", arn, proxyRoleConfigExternalId, roleArn, externalId);
-          final AssumeRoleRequest.Builder assumeRoleRequestBuilder = AssumeRoleRequest.builder()
-            .roleArn(arn)
-            .externalId(proxyRoleConfigExternalId)
-            .roleSessionName(UUID.randomUUID().toString());
+      @Override
+      public Optional<BackupJobIndex> backupJobIndex(Region backupRegion) {
+        return Optional.of(pool.backupJobIndex(Arrays.asList(roleArn, externalId, backupRegion), () -> new BackupJobIndex(shared(BackupClient.class, backupRegion, BackupClient::builder))));
+      }
+    };
+  }
 
-          final var provider = StsAssumeRoleCredentialsProvider.builder()
-            .stsClient(localStsClient)
-            .refreshRequest(
-              assumeRoleRequestBuilder
-                .build()
-            ).build();
+  /**
+   * Returns the pool's credentials for the given role, creating them on first use.  The provider assumes the role
+   * once and then refreshes the session shortly before it expires, so every client, service and region using the role
+   * shares a single AssumeRole call per session lifetime rather than making one per client.
+   */
+  private static AwsCredentialsProvider assumeRoleCredentials(String roleArn, @Nullable String externalId, @Nullable AWSDiscoveryConfig.ProxyRoleConfig proxyRoleConfig, AWSClientPool pool) {
+    final var proxyArn = proxyRoleConfig == null ? null : proxyRoleConfig.getArn();
+    final var proxyExternalId = proxyRoleConfig == null ? null : proxyRoleConfig.getExternalId();
+
+    var stsClient = localStsClient;
+    if (proxyRoleConfig != null) {
+      // Keyed like a directly assumed role, which it is, and resolved before the target role's provider so that the
+      // credentials cache is never updated from within one of its own factories.  This runs while a pooled client is
+      // being built, so the proxy's STS client is kept apart from the pool's other clients for the same reason.
+      final var proxyCredentials = pool.credentials(Arrays.asList(proxyArn, proxyExternalId, null, null), () -> assumeRoleProvider(localStsClient, proxyArn, proxyExternalId));
+      stsClient = pool.stsClient(Arrays.asList(proxyArn, proxyExternalId), () -> StsClient.builder()
+        .credentialsProvider(proxyCredentials)
+        .httpClient(pool.getHttpClient())
+        .build());
+    }
+
+    final var assumingClient = stsClient;
+    return pool.credentials(Arrays.asList(roleArn, externalId, proxyArn, proxyExternalId), () -> {
+      if (proxyRoleConfig != null) {
+        LOGGER.debug("Using proxyRoleConfig with arn={}, externalId={} connecting to roleArn={}, externalId={}", proxyArn, proxyExternalId, roleArn, externalId);
+      }
+      return assumeRoleProvider(assumingClient, roleArn, externalId);
+    });
+  }
 
-          stsClient = StsClient.builder().credentialsProvider(provider).build();
-        }
+  private static StsAssumeRoleCredentialsProvider assumeRoleProvider(StsClient stsClient, String roleArn, @Nullable String externalId) {
+    final AssumeRoleRequest.Builder assumeRoleRequestBuilder = AssumeRoleRequest.builder()
+      .roleArn(roleArn)
+      .roleSessionName(UUID.randomUUID().toString())
+      .externalId(externalId);
 
-          final AssumeRoleRequest.Builder assumeRoleRequestBuilder = AssumeRoleRequest.builder()
-                  .roleArn(roleArn)
-                  .roleSessionName(UUID.randomUUID().toString())
-                  .externalId(externalId);
+    return StsAssumeRoleCredentialsProvider.builder()
+      .stsClient(stsClient)
+      .refreshRequest(assumeRoleRequestBuilder.build())
+      .build();
+  }
 
-          final var provider = StsAssumeRoleCredentialsProvider.builder()
-          .stsClient(stsClient)
-          .refreshRequest(
-            assumeRoleRequestBuilder
-              .build()
-          ).build();
+  private static void useSharedTransport(AwsClientBuilder<?, ?> builder, AWSClientPool pool) {
+    // Every discovery client is synchronous, but async builders (which take a different transport) are left alone.
+    if (builder instanceof SdkSyncClientBuilder) {
+      ((SdkSyncClientBuilder<?, ?>) builder).httpClient(pool.getHttpClient());
+    }
+  }
 
-        return builder.credentialsProvider(provider).region(region);
-      }
-    };
+  private static void governRate(AwsClientBuilder<?, ?> builder, AWSClientPool pool, Object account) {
+    pool.getRateGovernor().ifPresent(governor -> builder.overrideConfiguration(c -> c
+      .addExecutionInterceptor(governor.interceptor(account))
+      .retryPolicy(governor.retryPolicy())));
   }
 
   public static MagpieAWSClientCreator localClientCreator(final Region region) {
+    return localClientCreator(region, AWSClientPool.GLOBAL);
+  }
+
+  public static MagpieAWSClientCreator localClientCreator(final Region region, AWSClientPool pool) {
     return new MagpieAWSClientCreator(){
       @Override
       public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT, ClientT> builder) {
@@ -84,8 +144,26 @@ public class ClientCreators {
         if (magpieAwsEndpoint != null) {
           builder.endpointOverride(URI.create(magpieAwsEndpoint));
         }
+        useSharedTransport(builder, pool);
+        governRate(builder, pool, LOCAL_CREDENTIALS);
         return builder.region(region);
       }
+
+      @Override
+      public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT shared(Class<ClientT> type, @Nullable Region clientRegion, Supplier<BuilderT> builder) {
+        final var effectiveRegion = clientRegion == null ? region : clientRegion;
+        return pool.get(Arrays.asList(LOCAL_CREDENTIALS, effectiveRegion, type), () -> AWSClientPool.build(this, builder, effectiveRegion));
+      }
+
+      @Override
+      public Optional<TagIndex> tagIndex() {
+        return pool.tagIndex(Arrays.asList(LOCAL_CREDENTIALS, region), () -> new TagIndex(shared(ResourceGroupsTaggingApiClient.class, ResourceGroupsTaggingApiClient::builder)));
+      }
+
+      @Override
+      public Optional<BackupJobIndex> backupJobIndex(Region backupRegion) {
+        return Optional.of(pool.backupJobIndex(Arrays.asList(LOCAL_CREDENTIALS, backupRegion), () -> new BackupJobIndex(shared(BackupClient.class, backupRegion, BackupClient::builder))));
+      }
     };
   }
 }
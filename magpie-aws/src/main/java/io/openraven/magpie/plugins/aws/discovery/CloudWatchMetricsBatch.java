@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
+
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Collects the CloudWatch metrics wanted by a region's resources and fetches them together with GetMetricData, which
+ * answers up to {@value #MAX_QUERIES_PER_CALL} queries per call, rather than with a GetMetricStatistics call each.
+ * <p>
+ * Discovery registers queries with {@link #add} while enriching resources, calls {@link #resolve()} once all of them
+ * have been enriched, and only then emits them.  Results are handed to each query's callback; actions registered with
+ * {@link #afterResolve} run once every callback has, for enrichment that combines several metrics.  Identical queries
+ * are fetched once and their result handed to each callback.
+ */
+public class CloudWatchMetricsBatch {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CloudWatchMetricsBatch.class);
+
+  public static final int MAX_QUERIES_PER_CALL = 500;
+
+  /**
+   * The periods covered by the {@link AWSUtils} GetMetricStatistics helpers, which batched metrics replace.
+   */
+  public enum Window {
+    // As AWSUtils.getCloudwatchMetricStatistics: hourly over the last 2 days, used to decide whether an asset is active.
+    RECENT(Duration.ofDays(2), 3600),
+    // As AWSUtils.getStaleDataCloudwatchMetrics: daily over the last 30 days.
+    STALE_DATA(Duration.ofDays(30), 86400);
+
+    private final Duration lookback;
+    private final int period;
+
+    Window(Duration lookback, int period) {
+      this.lookback = lookback;
+      this.period = period;
+    }
+  }
+
+  private final CloudWatchClient client;
+  private final Map<Window, Map<Metric, Map<Statistic, List<Consumer<SortedMap<Instant, Double>>>>>> queries = new LinkedHashMap<>();
+  private final List<Runnable> afterResolve = new ArrayList<>();
+
+  public CloudWatchMetricsBatch(CloudWatchClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Queues a query.  The callback is given the statistic's datapoints, keyed and ordered by timestamp, and is not called
+   * if the query couldn't be fetched.
+   */
+  public synchronized void add(Window window, String namespace, String metricName, Statistic statistic, List<Dimension> dimensions, Consumer<SortedMap<Instant, Double>> onResult) {
+    final var metric = Metric.builder().namespace(namespace).metricName(metricName).dimensions(dimensions).build();
+    queries.computeIfAbsent(window, w -> new LinkedHashMap<>())
+      .computeIfAbsent(metric, m -> new LinkedHashMap<>())
+      .computeIfAbsent(statistic, s -> new ArrayList<>())
+      .add(onResult);
+  }
+
+  public synchronized void afterResolve(Runnable action) {
+    afterResolve.add(action);
+  }
+
+  /**
+   * Fetches every queued query, hands out the results and runs the {@link #afterResolve} actions.  A failing call is
+   * logged and skips the callbacks of its queries only.  The batch is empty afterwards and may be reused.
+   */
+  public synchronized void resolve() {
+    try {
+      queries.forEach(this::fetch);
+      afterResolve.forEach(Runnable::run);
+    } finally {
+      queries.clear();
+      afterResolve.clear();
+    }
+  }
+
+  private void fetch(Window window, Map<Metric, Map<Statistic, List<Consumer<SortedMap<Instant, Double>>>>> metrics) {
+    final var endTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
+    final var startTime = Instant.now().minus(window.lookback).truncatedTo(ChronoUnit.MINUTES);
+
+    final var batch = new ArrayList<MetricDataQuery>();
+    final var callbacks = new ArrayList<List<Consumer<SortedMap<Instant, Double>>>>();
+    metrics.forEach((metric, statistics) -> statistics.forEach((statistic, consumers) -> {
+      // Ids only need to be unique within a call, and must start with a lower case letter.
+      batch.add(MetricDataQuery.builder()
+        .id("q" + batch.size())
+        .metricStat(MetricStat.builder().metric(metric).period(window.period).stat(statistic.toString()).build())
+        .returnData(true)
+        .build());
+      callbacks.add(consumers);
+      if (batch.size() == MAX_QUERIES_PER_CALL) {
+        fetch(startTime, endTime, batch, callbacks);
+        batch.clear();
+        callbacks.clear();
+      }
+    }));
+    if (!batch.isEmpty()) {
+      fetch(startTime, endTime, batch, callbacks);
+    }
+  }
+
+  private void fetch(Instant startTime, Instant endTime, List<MetricDataQuery> batch, List<List<Consumer<SortedMap<Instant, Double>>>> callbacks) {
+    final var results = new ArrayList<SortedMap<Instant, Double>>();
+    batch.forEach(q -> results.add(new TreeMap<>()));
+
+    try {
+      String nextToken = null;
+      do {
+        final var response = client.getMetricData(GetMetricDataRequest.builder()
+          .startTime(startTime)
+          .endTime(endTime)
+          .metricDataQueries(batch)
+          .nextToken(nextToken)
+          .build());
+        // Results for a query may be spread over several pages.
+        response.metricDataResults().forEach(result -> {
+          final var datapoints = results.get(Integer.parseInt(result.id().substring(1)));
+          for (int i = 0; i < result.timestamps().size() && i < result.values().size(); i++) {
+            datapoints.put(result.timestamps().get(i), result.values().get(i));
+          }
+        });
+        nextToken = response.nextToken();
+      } while (nextToken != null);
+    } catch (SdkServiceException | SdkClientException ex) {
+      LOGGER.warn("Couldn't fetch {} CloudWatch metrics: {}", batch.size(), ex.getMessage());
+      LOGGER.debug("Details", ex);
+      return;
+    }
+
+    for (int i = 0; i < callbacks.size(); i++) {
+      final var datapoints = results.get(i);
+      callbacks.get(i).forEach(consumer -> consumer.accept(datapoints));
+    }
+  }
+
+  /**
+   * @return The largest datapoint, truncated to a long as {@link AWSUtils#getCloudwatchMetricMaximum} and
+   * {@link AWSUtils#getCloudwatchMetricMinimum} do, or null when there are none.
+   */
+  @Nullable
+  public static Long maxAsLong(Map<Instant, Double> datapoints) {
+    return datapoints.values().stream().map(Double::longValue).max(Long::compareTo).orElse(null);
+  }
+
+  /**
+   * @return The datapoints keyed by their timestamp's ISO-8601 form, as the stale data metrics have been reported.
+   */
+  public static Map<String, Double> byTimestamp(Map<Instant, Double> datapoints) {
+    final var formatted = new LinkedHashMap<String, Double>();
+    datapoints.forEach((timestamp, value) -> formatted.put(timestamp.toString(), value));
+    return formatted;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The (account, service, region) units a discovery session has completed, appended to a file named after the session
+ * as each one completes.  A scan run again with the same session id skips the units already in the file, so that a
+ * run that died part way through can be resumed.
+ */
+public class DiscoveryCheckpoint {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryCheckpoint.class);
+  private static final String SEPARATOR = "\t";
+
+  private final Path file;
+  private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param dir The directory holding checkpoints, created if missing.
+   * @param sessionId The session whose units are recorded.  Units recorded by earlier runs of the session are read.
+   */
+  public DiscoveryCheckpoint(Path dir, String sessionId) {
+    this.file = dir.resolve(sessionId + ".checkpoint");
+    load();
+  }
+
+  public boolean isCompleted(String account, String service, String region) {
+    return completed.contains(key(account, service, region));
+  }
+
+  /**
+   * Records a completed unit.  Failures are logged, as the unit is then only discovered again on resume.
+   */
+  public synchronized void complete(String account, String service, String region) {
+    final var key = key(account, service, region);
+    if (!completed.add(key)) {
+      return;
+    }
+    try {
+      if (file.toAbsolutePath().getParent() != null) {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+      }
+      Files.writeString(file, key + System.lineSeparator(), StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't record {} as completed in {}: {}", key, file, ex.getMessage());
+    }
+  }
+
+  public int getCompletedCount() {
+    return completed.size();
+  }
+
+  /**
+   * Removes the checkpoint, once every unit of the session has completed.
+   */
+  public void delete() {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't delete checkpoint {}: {}", file, ex.getMessage());
+    }
+  }
+
+  private void load() {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try {
+      final var content = Files.readString(file, StandardCharsets.UTF_8);
+      // A line cut short by the process dying names no unit, and is ignored.  It is ended so that units recorded by
+      // this run start on a line of their own.
+      content.lines()
+        .filter(line -> line.split(SEPARATOR, -1).length == 3)
+        .forEach(completed::add);
+      if (!content.isEmpty() && !content.endsWith("\n")) {
+        Files.writeString(file, System.lineSeparator(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+      }
+      LOGGER.info("Resuming from {}, with {} units already completed", file, completed.size());
+    } catch (IOException ex) {
+      LOGGER.warn("Ignoring unreadable checkpoint {}: {}", file, ex.getMessage());
+    }
+  }
+
+  private static String key(String account, String service, String region) {
+    return String.join(SEPARATOR, account, service, region);
+  }
+}
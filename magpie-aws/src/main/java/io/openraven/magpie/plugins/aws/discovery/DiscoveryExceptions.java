@@ -12,10 +12,51 @@ import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class DiscoveryExceptions {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryExceptions.class);
 
+  // Errors handled while the discovery unit running on each thread ran, when it is being counted.
+  private static final ThreadLocal<AtomicInteger> UNIT_FAILURES = new ThreadLocal<>();
+
+  /**
+   * Runs a unit's discovery, counting the errors handled here rather than thrown, so that a unit with missing results
+   * isn't recorded as complete.  Errors that running the unit again would meet too, such as denied access or missing
+   * resources, aren't counted.
+   * @return The number of errors counted.
+   */
+  public static int countFailures(Runnable discovery) {
+    final var failures = new AtomicInteger();
+    final var outer = UNIT_FAILURES.get();
+    UNIT_FAILURES.set(failures);
+    try {
+      discovery.run();
+    } finally {
+      UNIT_FAILURES.set(outer);
+    }
+    return failures.get();
+  }
+
+  /**
+   * @return The task, counting its errors towards the calling thread's unit, for work a unit hands to other threads.
+   */
+  public static Runnable propagateFailures(Runnable task) {
+    final var failures = UNIT_FAILURES.get();
+    if (failures == null) {
+      return task;
+    }
+    return () -> {
+      UNIT_FAILURES.set(failures);
+      try {
+        task.run();
+      } finally {
+        UNIT_FAILURES.remove();
+      }
+    };
+  }
+
   static public void onDiscoveryException(String resourceType, String resourceName, Region region, AwsServiceException exception) {
     var event = createEvent(resourceType + " AwsServiceException", SentryLevel.WARNING);
     handleOrReportError(event, resourceType, resourceName, region, exception);
@@ -38,6 +79,22 @@ public class DiscoveryExceptions {
   private static void handleOrReportError(SentryEvent sentryEvent, String resourceType, String resourceName, Region region, Exception exception) {
     if (!isManagedSdkException(resourceType, resourceName, exception, region)) {
       logErrorAndReportToSentry(resourceType, resourceName, region, sentryEvent, exception);
+      recordFailure();
+    } else if (isTransient(exception)) {
+      recordFailure();
+    }
+  }
+
+  // Managed exceptions that a later run may not meet.
+  private static boolean isTransient(Exception exception) {
+    return exception instanceof SdkServiceException &&
+      (((SdkServiceException) exception).isThrottlingException() || ((SdkServiceException) exception).isClockSkewException());
+  }
+
+  static void recordFailure() {
+    final var failures = UNIT_FAILURES.get();
+    if (failures != null) {
+      failures.incrementAndGet();
     }
   }
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import io.openraven.magpie.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Runs discovery work units, each covering one (account, service, region) combination, on a fixed number of threads.
+ * Units are started in the order given, skipping over any whose account or service is already at its concurrency
+ * cap, so a busy account or a tightly capped service doesn't hold up work elsewhere.  A failing unit is logged and
+ * doesn't affect any other unit.
+ */
+public class DiscoveryScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryScheduler.class);
+
+  public static class WorkUnit {
+    private final String account;
+    private final String service;
+    private final String region;
+    private final Session session;
+    private final Consumer<Session> task;
+
+    /**
+     * @param account Identifies the account the unit discovers, used for per-account caps.
+     * @param service The discovery service, used for per-service caps.
+     * @param region The region the unit discovers, only used for logging.
+     * @param task The discovery itself.
+     */
+    public WorkUnit(String account, String service, String region, Runnable task) {
+      this(account, service, region, null, session -> task.run());
+    }
+
+    /**
+     * @param session The session the unit's envelopes are emitted for.
+     * @param task The discovery itself, given the session to emit envelopes for.
+     */
+    public WorkUnit(String account, String service, String region, Session session, Consumer<Session> task) {
+      this.account = account;
+      this.service = service;
+      this.region = region;
+      this.session = session;
+      this.task = task;
+    }
+
+    /**
+     * @return The same unit, emitting envelopes for the session instead, for units run on behalf of another process.
+     */
+    WorkUnit forSession(Session session) {
+      return new WorkUnit(account, service, region, session, task);
+    }
+
+    void run() {
+      task.accept(session);
+    }
+
+    /**
+     * @return Names the unit within a scan, in the form checkpoints record it.
+     */
+    String key() {
+      return String.join("\t", account, service, region);
+    }
+
+    @Override
+    public String toString() {
+      return account + ":" + service + ":" + region;
+    }
+  }
+
+  private final int parallelism;
+  private final int accountConcurrency;
+  private final Map<String, Integer> serviceConcurrency;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition finished = lock.newCondition();
+  private final Map<String, Integer> runningByAccount = new HashMap<>();
+  private final Map<String, Integer> runningByService = new HashMap<>();
+  private int running;
+
+  /**
+   * @param parallelism The maximum number of units running at once.
+   * @param accountConcurrency The maximum number of units running at once for any one account, or zero for no cap.
+   * @param serviceConcurrency Per-service caps on the number of units running at once.  Services not listed are only
+   *                           bounded by {@code parallelism}.
+   */
+  public DiscoveryScheduler(int parallelism, int accountConcurrency, Map<String, Integer> serviceConcurrency) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Discovery parallelism must be at least 1, got " + parallelism);
+    }
+    serviceConcurrency.forEach((service, cap) -> {
+      if (cap == null || cap < 1) {
+        throw new IllegalArgumentException("Concurrency for service " + service + " must be at least 1, got " + cap);
+      }
+    });
+    this.parallelism = parallelism;
+    this.accountConcurrency = accountConcurrency;
+    this.serviceConcurrency = serviceConcurrency;
+  }
+
+  /**
+   * Runs every unit and returns once all of them have completed.  Not reentrant; concurrent runs need separate
+   * schedulers.
+   */
+  public void run(List<WorkUnit> units) throws InterruptedException {
+    final var pending = new ArrayDeque<>(units);
+    final var threadCount = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(units.size(), 1)), r -> {
+      final var t = new Thread(r, "aws-discovery-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    lock.lock();
+    try {
+      while (!pending.isEmpty() || running > 0) {
+        dispatch(pending, executor);
+        finished.await();
+      }
+    } finally {
+      lock.unlock();
+      executor.shutdownNow();
+    }
+  }
+
+  // Must be called while holding the lock.
+  private void dispatch(Deque<WorkUnit> pending, ExecutorService executor) {
+    final var it = pending.iterator();
+    while (running < parallelism && it.hasNext()) {
+      final var unit = it.next();
+      if (!hasCapacity(unit)) {
+        continue;
+      }
+      it.remove();
+      runningByAccount.merge(unit.account, 1, Integer::sum);
+      runningByService.merge(unit.service, 1, Integer::sum);
+      running++;
+      executor.execute(() -> execute(unit));
+    }
+  }
+
+  private boolean hasCapacity(WorkUnit unit) {
+    if (accountConcurrency > 0 && runningByAccount.getOrDefault(unit.account, 0) >= accountConcurrency) {
+      return false;
+    }
+    final var serviceCap = serviceConcurrency.get(unit.service);
+    return serviceCap == null || runningByService.getOrDefault(unit.service, 0) < serviceCap;
+  }
+
+  private void execute(WorkUnit unit) {
+    try {
+      unit.run();
+    } catch (Exception ex) {
+      LOGGER.error("Discovery error in {} - {}", unit, ex.getMessage());
+      LOGGER.debug("Details", ex);
+    } finally {
+      lock.lock();
+      try {
+        runningByAccount.merge(unit.account, -1, Integer::sum);
+        runningByService.merge(unit.service, -1, Integer::sum);
+        running--;
+        finished.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
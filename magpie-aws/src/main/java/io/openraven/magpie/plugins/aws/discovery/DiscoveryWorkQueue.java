@@ -0,0 +1,312 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import io.openraven.magpie.api.Session;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads a scan's (account, service, region) units over several Magpie processes through a Kafka topic.  A
+ * coordinator publishes the units it would otherwise run; workers, all in one consumer group, run the units from the
+ * partitions assigned to them.  A worker commits its offsets only once a batch of units has run, so the units held by a
+ * worker that dies are redelivered to whichever worker its partitions are reassigned to.  While a batch runs the worker
+ * keeps polling with its partitions paused, so that however long the batch takes the group doesn't consider it gone.
+ * The topic's partition count bounds the number of busy workers.
+ * <p>
+ * Records only name their unit and the coordinator's session, whose envelopes workers emit, so every process must be
+ * configured with the same services, regions and credentials or assumed roles.  A worker stops once no units have
+ * reached it for the idle timeout.
+ */
+public class DiscoveryWorkQueue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryWorkQueue.class);
+
+  public enum Role {
+    COORDINATOR,
+    WORKER
+  }
+
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+  // Record headers carrying the coordinator's session.
+  static final String SESSION_ID_HEADER = "magpie.session.id";
+  static final String SESSION_CREATED_AT_HEADER = "magpie.session.createdAt";
+
+  private static final Map<String, Object> PRODUCER_PROPERTIES = Map.of(
+    ProducerConfig.ACKS_CONFIG, "all",
+    ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true",
+    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName(),
+    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName()
+  );
+
+  private static final Map<String, Object> CONSUMER_PROPERTIES = Map.of(
+    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
+    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
+    ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false",
+    // Units published before the first worker joined the group are still run.
+    ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"
+  );
+
+  /**
+   * @return The role named, ignoring case.
+   */
+  public static Role role(String name) {
+    for (var role : Role.values()) {
+      if (role.name().equalsIgnoreCase(name)) {
+        return role;
+      }
+    }
+    throw new IllegalArgumentException("Work queue 'role' must be coordinator or worker, got " + name);
+  }
+
+  private final String topic;
+  private final Map<String, Object> properties;
+  private final Duration idleTimeout;
+
+  /**
+   * @param properties Kafka client properties, as for a Kafka fifo, including the {@code topic} units are published
+   *                   to.  Workers also need a {@code group.id}.
+   * @param idleTimeout How long a worker waits for units before stopping.
+   */
+  public DiscoveryWorkQueue(Map<String, Object> properties, Duration idleTimeout) {
+    final var t = properties.get("topic");
+    if (Objects.isNull(t)) {
+      throw new IllegalArgumentException("Kafka 'topic' value must be set under the work queue properties");
+    }
+    this.topic = t.toString();
+    this.properties = new HashMap<>(properties);
+    this.properties.remove("topic");
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Publishes every unit, returning once the broker has acknowledged them.  Failures are logged.
+   * @param session The session workers emit the units' envelopes for.
+   */
+  public void publish(Session session, List<DiscoveryScheduler.WorkUnit> units) {
+    final var props = new HashMap<>(PRODUCER_PROPERTIES);
+    props.putAll(properties);
+    try (final var producer = new KafkaProducer<String, String>(props)) {
+      publish(producer, session, units);
+    }
+  }
+
+  void publish(Producer<String, String> producer, Session session, List<DiscoveryScheduler.WorkUnit> units) {
+    final var sent = new ArrayList<Future<RecordMetadata>>(units.size());
+    units.forEach(unit -> {
+      final var record = new ProducerRecord<>(topic, unit.key(), unit.key());
+      record.headers()
+        .add(SESSION_ID_HEADER, session.getId().getBytes(StandardCharsets.UTF_8))
+        .add(SESSION_CREATED_AT_HEADER, session.getCreatedAt().toString().getBytes(StandardCharsets.UTF_8));
+      sent.add(producer.send(record));
+    });
+    producer.flush();
+    var failed = 0;
+    for (var future : sent) {
+      try {
+        future.get();
+      } catch (ExecutionException ex) {
+        failed++;
+        LOGGER.debug("Details", ex.getCause());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (failed > 0) {
+      LOGGER.error("Couldn't publish {} of {} units to {}", failed, units.size(), topic);
+    } else {
+      LOGGER.info("Published {} units to {}", units.size(), topic);
+    }
+  }
+
+  /**
+   * Runs the units the group assigns to this worker until none have arrived for the idle timeout.
+   * @param units Every unit this worker's configuration covers, from which those named by records are run.
+   * @param scheduler Runs each batch of units.
+   * @param batchSize The most units taken from the topic at a time.
+   */
+  public void consume(List<DiscoveryScheduler.WorkUnit> units, DiscoveryScheduler scheduler, int batchSize) throws InterruptedException {
+    if (!properties.containsKey(ConsumerConfig.GROUP_ID_CONFIG)) {
+      throw new IllegalArgumentException("Kafka 'group.id' value must be set under the work queue properties of workers");
+    }
+    final var props = new HashMap<>(CONSUMER_PROPERTIES);
+    props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
+    props.putAll(properties);
+    try (final var consumer = new KafkaConsumer<String, String>(props)) {
+      consume(consumer, units, scheduler);
+    }
+  }
+
+  void consume(Consumer<String, String> consumer, List<DiscoveryScheduler.WorkUnit> units, DiscoveryScheduler scheduler) throws InterruptedException {
+    final var byKey = units.stream()
+      .collect(Collectors.toMap(DiscoveryScheduler.WorkUnit::key, Function.identity(), (a, b) -> a));
+    final var sessions = new HashMap<String, Session>();
+    final var running = new AtomicBoolean();
+    consumer.subscribe(List.of(topic), new ConsumerRebalanceListener() {
+      @Override
+      public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+      }
+
+      @Override
+      public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        // Partitions gained while a batch runs wait for it, like the rest.
+        if (running.get()) {
+          consumer.pause(partitions);
+        }
+      }
+    });
+    final var executor = Executors.newSingleThreadExecutor(r -> {
+      final var t = new Thread(r, "aws-work-queue-batch");
+      t.setDaemon(true);
+      return t;
+    });
+    var ran = 0;
+    var lastUnit = System.nanoTime();
+    try {
+      while (System.nanoTime() - lastUnit < idleTimeout.toNanos()) {
+        final var records = consumer.poll(POLL_TIMEOUT);
+        if (records.isEmpty()) {
+          continue;
+        }
+        final var batch = new ArrayList<DiscoveryScheduler.WorkUnit>(records.count());
+        records.forEach(r -> {
+          final var unit = byKey.get(r.value());
+          final var session = session(r, sessions);
+          if (unit == null) {
+            LOGGER.warn("Skipping unit {}, which this worker's configuration doesn't cover", r.value());
+          } else if (session == null) {
+            LOGGER.warn("Skipping unit {}, which was published without a session", r.value());
+          } else {
+            batch.add(unit.forSession(session));
+          }
+        });
+        run(consumer, executor, running, () -> scheduler.run(batch));
+        try {
+          consumer.commitSync();
+        } catch (CommitFailedException ex) {
+          // The batch's partitions were reassigned while it ran, so another worker runs its units again.  Discovery is
+          // idempotent, so that only costs time.
+          LOGGER.warn("Couldn't commit a batch of {} units, they may be discovered again: {}", batch.size(), ex.getMessage());
+        }
+        ran += batch.size();
+        lastUnit = System.nanoTime();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    LOGGER.info("Ran {} units from {}, none received for {}s", ran, topic, idleTimeout.toSeconds());
+  }
+
+  /**
+   * Runs a batch on the executor, polling meanwhile with every partition paused so that the group keeps this worker's
+   * partitions assigned to it without handing it more units.
+   */
+  private static void run(Consumer<String, String> consumer, ExecutorService executor, AtomicBoolean running, Batch batch) throws InterruptedException {
+    running.set(true);
+    consumer.pause(consumer.assignment());
+    final var done = executor.submit(() -> {
+      batch.run();
+      return null;
+    });
+    try {
+      while (true) {
+        try {
+          done.get(POLL_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+          return;
+        } catch (TimeoutException ex) {
+          final var records = consumer.poll(Duration.ZERO);
+          // Only fetched if partitions were assigned without the rebalance listener pausing them, and then left to be
+          // polled again once the batch has run.
+          for (var partition : records.partitions()) {
+            consumer.seek(partition, records.records(partition).get(0).offset());
+            consumer.pause(List.of(partition));
+          }
+        }
+      }
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw new IllegalStateException(ex.getCause());
+    } catch (InterruptedException ex) {
+      done.cancel(true);
+      throw ex;
+    } finally {
+      consumer.resume(consumer.paused());
+      running.set(false);
+    }
+  }
+
+  /**
+   * @return The coordinator's session named by the record, one instance per id, or null if it names none.
+   */
+  private static Session session(ConsumerRecord<String, String> record, Map<String, Session> sessions) {
+    final var id = record.headers().lastHeader(SESSION_ID_HEADER);
+    if (id == null) {
+      return null;
+    }
+    return sessions.computeIfAbsent(new String(id.value(), StandardCharsets.UTF_8), sessionId -> {
+      final var session = new Session();
+      session.setId(sessionId);
+      final var createdAt = record.headers().lastHeader(SESSION_CREATED_AT_HEADER);
+      if (createdAt != null) {
+        session.setCreatedAt(Instant.parse(new String(createdAt.value(), StandardCharsets.UTF_8)));
+      }
+      return session;
+    });
+  }
+
+  @FunctionalInterface
+  private interface Batch {
+    void run() throws InterruptedException;
+  }
+}
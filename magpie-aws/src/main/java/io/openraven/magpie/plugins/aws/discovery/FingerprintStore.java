@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A 64-bit hash of each discovered resource, leaving out the fields that change on every scan, by document id, kept in
+ * a file between scans.  Incremental discovery emits resources in full only when they are new or their hash has
+ * changed, and otherwise emits a marker that only records that the resource is still present.
+ * <p>
+ * The file only holds the resources seen by the latest scan, so that a resource which disappears and comes back is
+ * emitted in full.  Deleting it makes the next scan emit everything.  Terminals that are handed a marker for a
+ * resource they don't hold append its document id to the {@link #getStaleFile() stale file}, and the next scan forgets
+ * the fingerprints listed there.
+ */
+public class FingerprintStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FingerprintStore.class);
+
+  // Fields left out of "still present" markers, and the ones left out of the hash because every scan sets them anew.
+  private static final List<String> CONTENT_FIELDS = List.of("configuration", "supplementaryConfiguration", "tags", "discoveryMeta");
+  private static final Set<String> UNHASHED_FIELDS = Set.of("updatedIso", "discoverySessionId", "discoveryMeta");
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final Path file;
+  private final Path staleFile;
+  // The stale file as read by this scan, kept until save() so that its ids aren't lost if the scan is interrupted.
+  private final Path loadedStaleFile;
+  private final Map<String, Long> previous = new HashMap<>();
+  private final Map<String, Long> current = new ConcurrentHashMap<>();
+
+  /**
+   * @param file Where fingerprints are kept.  They are read from it, if it exists, and written by {@link #save()}.
+   */
+  public FingerprintStore(Path file) {
+    this.file = file;
+    this.staleFile = file.resolveSibling(file.getFileName() + ".stale");
+    this.loadedStaleFile = file.resolveSibling(file.getFileName() + ".stale.loaded");
+    load();
+    forgetStale();
+  }
+
+  /**
+   * @return The file to which terminals append, one per line, the document ids of markers whose resource they don't
+   * hold.  Named on each marker with {@link io.openraven.magpie.api.MagpieEnvelope#STALE_FILE_METADATA}.
+   */
+  public Path getStaleFile() {
+    return staleFile;
+  }
+
+  /**
+   * Records the resource's fingerprint for this scan.
+   * @return Whether the resource is new or has changed since the previous scan, and should therefore be emitted in
+   * full.  Contents without a document id are always considered changed.
+   */
+  public boolean isChanged(ObjectNode contents) {
+    final var documentId = contents.path("documentId").textValue();
+    if (documentId == null) {
+      return true;
+    }
+    final var hash = fingerprint(contents);
+    current.put(documentId, hash);
+    final var previousHash = previous.get(documentId);
+    return previousHash == null || previousHash != hash;
+  }
+
+  /**
+   * @return A copy of the contents without the fields that incremental discovery leaves out of unchanged resources.
+   */
+  public static ObjectNode toMarker(ObjectNode contents) {
+    final var marker = contents.deepCopy();
+    marker.remove(CONTENT_FIELDS);
+    return marker;
+  }
+
+  static long fingerprint(ObjectNode contents) {
+    final var fields = new TreeMap<String, JsonNode>();
+    contents.fields().forEachRemaining(field -> {
+      if (!UNHASHED_FIELDS.contains(field.getKey())) {
+        fields.put(field.getKey(), field.getValue());
+      }
+    });
+    var hash = FNV_OFFSET_BASIS;
+    for (var entry : fields.entrySet()) {
+      final var field = entry.getKey();
+      final var value = entry.getValue();
+      // Separates fields, so that moving data between them changes the hash.
+      hash = (hash ^ field.hashCode()) * FNV_PRIME;
+      for (byte b : String.valueOf(value).getBytes(StandardCharsets.UTF_8)) {
+        hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Replaces the file's fingerprints with those recorded by this scan.  Failures are logged; the next scan then emits
+   * the resources that would have been markers in full.
+   */
+  public void save() {
+    try {
+      if (file.toAbsolutePath().getParent() != null) {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+      }
+      // Written aside and moved into place so that an interrupted run never leaves a partial file.
+      final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(current.size());
+        for (var entry : current.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue());
+        }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      // The resources listed there have been emitted in full by this scan.
+      Files.deleteIfExists(loadedStaleFile);
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't save resource fingerprints to {}: {}", file, ex.getMessage());
+    }
+  }
+
+  private void load() {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      final var count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        previous.put(in.readUTF(), in.readLong());
+      }
+      LOGGER.debug("Loaded {} resource fingerprints from {}", previous.size(), file);
+    } catch (IOException ex) {
+      LOGGER.warn("Ignoring unreadable resource fingerprints {}, every resource will be emitted: {}", file, ex.getMessage());
+      previous.clear();
+    }
+  }
+
+  private void forgetStale() {
+    try {
+      // Moved aside first, so that ids terminals append during this scan are left for the next one.  Ids taken by an
+      // interrupted scan are still in the loaded file, and are added to.
+      if (Files.exists(staleFile)) {
+        final var taken = file.resolveSibling(file.getFileName() + ".stale.taken");
+        Files.move(staleFile, taken, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(loadedStaleFile, Files.readAllLines(taken), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        Files.delete(taken);
+      }
+      if (Files.exists(loadedStaleFile)) {
+        final var stale = Files.readAllLines(loadedStaleFile);
+        stale.forEach(previous::remove);
+        LOGGER.info("{} resources reported missing downstream will be emitted in full", stale.size());
+      }
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't read the resources reported missing downstream from {}, ignoring fingerprints: {}", staleFile, ex.getMessage());
+      previous.clear();
+    }
+  }
+}
@@ -1,8 +1,46 @@
 package io.openraven.magpie.plugins.aws.discovery;
 
+import jakarta.annotation.Nullable;
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Optional;
+import java.util.function.Supplier;
 
-@FunctionalInterface
 public interface MagpieAWSClientCreator {
   <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT,ClientT> builder);
+
+  /**
+   * Returns a client configured by this creator, shared with every other caller asking for the same client type with
+   * the same credentials and region.  Shared clients are closed along with their {@link AWSClientPool}, so callers
+   * must not close them.
+   * @param type The client interface, e.g. {@code CloudWatchClient.class}.
+   * @param builder Supplies a fresh builder for the client, e.g. {@code CloudWatchClient::builder}.
+   */
+  default <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT shared(Class<ClientT> type, Supplier<BuilderT> builder) {
+    return shared(type, null, builder);
+  }
+
+  /**
+   * As {@link #shared(Class, Supplier)}, for a region other than the one this creator was made for.
+   * @param region The region to use, or null for this creator's region.
+   */
+  <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT shared(Class<ClientT> type, @Nullable Region region, Supplier<BuilderT> builder);
+
+  /**
+   * @return The tags of this creator's account and region, when the scan indexes them.  Empty for creators that don't
+   * belong to a pool.
+   */
+  default Optional<TagIndex> tagIndex() {
+    return Optional.empty();
+  }
+
+  /**
+   * @return The backup jobs of this creator's account in the given region.  Empty for creators that don't belong to a
+   * pool.
+   */
+  default Optional<BackupJobIndex> backupJobIndex(Region region) {
+    return Optional.empty();
+  }
 }
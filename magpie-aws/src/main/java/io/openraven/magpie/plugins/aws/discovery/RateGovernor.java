@@ -0,0 +1,186 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import software.amazon.awssdk.awscore.AwsExecutionAttribute;
+import software.amazon.awssdk.awscore.retry.AwsRetryPolicy;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.RetryPolicyContext;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces the requests of a scan's clients with a token bucket per (account, region, service).  A bucket starts at the
+ * configured rate, which is also its ceiling, and adapts to throttling AIMD-style: a throttled response halves its
+ * rate, at most once a second, and each successful call adds back a fraction of a request per second, so that a busy
+ * bucket regains about one request per second every second.  Throttled requests are retried up to
+ * {@value #THROTTLED_RETRIES} times rather than the SDK's default, so that they are slowed down rather than dropped.
+ */
+public class RateGovernor {
+
+  static final int THROTTLED_RETRIES = 10;
+  static final double MIN_RATE = 1;
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final ExecutionAttribute<Bucket> BUCKET = new ExecutionAttribute<>("MagpieRateBucket");
+
+  private final double rate;
+  private final Map<Object, Bucket> buckets = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> throttles = new ConcurrentHashMap<>();
+
+  /**
+   * @param rate The requests per second each (account, region, service) starts at and never exceeds.
+   */
+  public RateGovernor(double rate) {
+    this.rate = Math.max(MIN_RATE, rate);
+  }
+
+  /**
+   * @param account Identifies the credentials of the clients the interceptor is added to.
+   * @return An interceptor holding each request of a client until its bucket has a token.
+   */
+  public ExecutionInterceptor interceptor(Object account) {
+    return new ExecutionInterceptor() {
+      @Override
+      public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        final var key = Arrays.asList(account, executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION),
+          executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME));
+        executionAttributes.putAttribute(BUCKET, buckets.computeIfAbsent(key, k -> new Bucket(rate)));
+      }
+
+      @Override
+      public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        // Called for every attempt, so retries are paced too.
+        final var wait = executionAttributes.getAttribute(BUCKET).reserve(System.nanoTime());
+        if (wait > 0) {
+          try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+
+      @Override
+      public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.getAttribute(BUCKET).onSuccess();
+      }
+    };
+  }
+
+  /**
+   * @return The SDK's default retry policy, extended to retry throttled requests {@value #THROTTLED_RETRIES} times and
+   * to slow their bucket down.
+   */
+  public RetryPolicy retryPolicy() {
+    final var defaults = AwsRetryPolicy.defaultRetryPolicy();
+    final var defaultRetries = defaults.numRetries() == null ? 3 : defaults.numRetries();
+    final var defaultCondition = defaults.retryCondition();
+    return defaults.toBuilder()
+      .numRetries(Math.max(defaultRetries, THROTTLED_RETRIES))
+      .retryCondition(new RetryCondition() {
+        @Override
+        public boolean shouldRetry(RetryPolicyContext context) {
+          final var throttled = context.exception() != null && RetryUtils.isThrottlingException(context.exception());
+          if (throttled) {
+            onThrottle(context.executionAttributes());
+          }
+          return defaultCondition.shouldRetry(context) && (throttled || context.retriesAttempted() < defaultRetries);
+        }
+
+        @Override
+        public void requestWillNotBeRetried(RetryPolicyContext context) {
+          defaultCondition.requestWillNotBeRetried(context);
+        }
+
+        @Override
+        public void requestSucceeded(RetryPolicyContext context) {
+          defaultCondition.requestSucceeded(context);
+        }
+      })
+      .build();
+  }
+
+  /**
+   * @return The number of throttled attempts so far, by service.
+   */
+  public Map<String, Long> getThrottles() {
+    final var counts = new TreeMap<String, Long>();
+    throttles.forEach((service, count) -> counts.put(service, count.sum()));
+    return counts;
+  }
+
+  private void onThrottle(ExecutionAttributes executionAttributes) {
+    final var service = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+    throttles.computeIfAbsent(String.valueOf(service), s -> new LongAdder()).increment();
+    final var bucket = executionAttributes.getAttribute(BUCKET);
+    if (bucket != null) {
+      bucket.onThrottle(System.nanoTime());
+    }
+  }
+
+  static class Bucket {
+    private final double maxRate;
+    private double rate;
+    private long nextPermit = Long.MIN_VALUE;
+    private long lastDecrease = Long.MIN_VALUE;
+
+    Bucket(double rate) {
+      this.maxRate = rate;
+      this.rate = rate;
+    }
+
+    /**
+     * Takes a token.
+     * @return How long to wait, in nanoseconds, before using it.
+     */
+    synchronized long reserve(long now) {
+      // Up to a second's worth of tokens unused in the past may be spent at once.
+      final var permit = nextPermit == Long.MIN_VALUE ? now : Math.max(nextPermit, now - SECOND);
+      nextPermit = permit + (long) (SECOND / rate);
+      return Math.max(0, permit - now);
+    }
+
+    synchronized void onSuccess() {
+      rate = Math.min(maxRate, rate + 1 / rate);
+    }
+
+    synchronized void onThrottle(long now) {
+      // Attempts in flight when the rate is cut are likely throttled too, and shouldn't cut it again.
+      if (lastDecrease == Long.MIN_VALUE || now - lastDecrease >= SECOND) {
+        rate = Math.max(MIN_RATE, rate / 2);
+        lastDecrease = now;
+      }
+    }
+
+    synchronized double getRate() {
+      return rate;
+    }
+  }
+}
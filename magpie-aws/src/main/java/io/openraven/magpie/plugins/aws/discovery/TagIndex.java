@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.GetResourcesRequest;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The tags of every tagged resource of an (account, region), listed with a few paged GetResources calls the first time
+ * one is looked up.  Discovery looks a resource's tags up here before asking its service for them, and only asks on a
+ * miss.  Resources that have never been tagged are not listed by GetResources, so they are always misses.
+ */
+public class TagIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TagIndex.class);
+
+  // The largest page GetResources allows.
+  private static final int RESOURCES_PER_PAGE = 100;
+
+  private final ResourceGroupsTaggingApiClient client;
+  private volatile Map<String, Map<String, String>> tags;
+
+  public TagIndex(ResourceGroupsTaggingApiClient client) {
+    this.client = client;
+  }
+
+  /**
+   * @return The resource's tags by key, or empty if the resource wasn't listed or the listing failed.
+   */
+  public Optional<Map<String, String>> get(String arn) {
+    if (tags == null) {
+      load();
+    }
+    return Optional.ofNullable(tags.get(arn));
+  }
+
+  private synchronized void load() {
+    if (tags != null) {
+      return;
+    }
+    final var loaded = new HashMap<String, Map<String, String>>();
+    try {
+      client.getResourcesPaginator(GetResourcesRequest.builder().resourcesPerPage(RESOURCES_PER_PAGE).build())
+        .resourceTagMappingList()
+        .forEach(mapping -> {
+          final var resourceTags = new LinkedHashMap<String, String>();
+          mapping.tags().forEach(tag -> resourceTags.put(tag.key(), tag.value()));
+          loaded.put(mapping.resourceARN(), resourceTags);
+        });
+      LOGGER.debug("Indexed the tags of {} resources", loaded.size());
+    } catch (SdkServiceException | SdkClientException ex) {
+      // Every lookup misses, so discovery asks each service as it would without an index.
+      LOGGER.warn("Couldn't list tagged resources, tags will be fetched per resource: {}", ex.getMessage());
+      loaded.clear();
+    }
+    tags = loaded;
+  }
+}
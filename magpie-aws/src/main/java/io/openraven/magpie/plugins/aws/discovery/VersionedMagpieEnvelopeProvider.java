@@ -22,14 +22,37 @@ import io.openraven.magpie.api.Session;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VersionedMagpieEnvelopeProvider {
   private static final VersionProvider versionProvider = new VersionProvider();
 
+  // Incremental discovery's fingerprints, by the id of the session they are recorded for.
+  private static final Map<String, FingerprintStore> fingerprints = new ConcurrentHashMap<>();
+
+  /**
+   * Has resources emitted for the session that haven't changed since the previous scan emitted as markers, until
+   * {@link #unregisterFingerprintStore(Session)}.  Other sessions' resources are emitted in full.
+   * @param store The fingerprints of the previous scan.
+   */
+  public static void registerFingerprintStore(Session session, FingerprintStore store) {
+    fingerprints.put(session.getId(), store);
+  }
+
+  public static void unregisterFingerprintStore(Session session) {
+    fingerprints.remove(session.getId());
+  }
+
   public static MagpieEnvelope create(Session session, List<String> pluginPath, ObjectNode contents) {
-    var envelope = new MagpieEnvelope(session, pluginPath, contents);
+    final var store = session == null ? null : fingerprints.get(session.getId());
+    final var unchanged = store != null && !store.isChanged(contents);
+    var envelope = new MagpieEnvelope(session, pluginPath, unchanged ? FingerprintStore.toMarker(contents) : contents);
 
     Map<String, String> metadata = envelope.getMetadata();
+    if (unchanged) {
+      metadata.put(MagpieEnvelope.UNCHANGED_METADATA, "true");
+      metadata.put(MagpieEnvelope.STALE_FILE_METADATA, store.getStaleFile().toAbsolutePath().toString());
+    }
     metadata.put("magpie.aws.version", versionProvider.getProjectVersion());
     metadata.put("aws.sdk.version", versionProvider.getAwsSdkVersion());
     envelope.setMetadata(metadata);
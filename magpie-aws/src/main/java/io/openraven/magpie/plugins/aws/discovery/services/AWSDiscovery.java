@@ -16,6 +16,7 @@
 
 package io.openraven.magpie.plugins.aws.discovery.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.openraven.magpie.api.Emitter;
 import io.openraven.magpie.api.MagpieAwsResource;
@@ -47,6 +48,16 @@ public interface AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("awsBackupJobs", backups));
   }
 
+  /**
+   * Sets the resource's tags from the client creator's tag index, if it has one and the resource is listed there.
+   * @return Whether the tags were set, so that only misses are asked for from the resource's service.
+   */
+  default boolean discoverIndexedTags(String arn, MagpieAwsResource data, ObjectMapper mapper, MagpieAWSClientCreator clientCreator) {
+    final var indexed = clientCreator.tagIndex().flatMap(index -> index.get(arn));
+    indexed.ifPresent(tags -> AWSUtils.update(data.tags, mapper.convertValue(tags, JsonNode.class)));
+    return indexed.isPresent();
+  }
+
   default String fullService() {
     return AWSDiscoveryPlugin.ID + ":" + service();
   }
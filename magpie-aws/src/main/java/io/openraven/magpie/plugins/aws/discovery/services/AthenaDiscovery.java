@@ -60,7 +60,8 @@ public class AthenaDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = AthenaDataCatalog.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(AthenaClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(AthenaClient.class, AthenaClient::builder);
       client.listDataCatalogsPaginator(ListDataCatalogsRequest.builder().build()).dataCatalogsSummary()
         .forEach(dataCatalog -> {
           var arn = format("arn:aws:athena:%s:%s:datacatalog/%s", region, account, dataCatalog.catalogName());
@@ -58,7 +58,8 @@ public class CloudFrontDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = CloudFrontDistribution.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(CloudFrontClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(CloudFrontClient.class, CloudFrontClient::builder);
       client.listDistributions().distributionList().items().forEach(distribution -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, distribution.arn())
           .withResourceName(distribution.domainName())
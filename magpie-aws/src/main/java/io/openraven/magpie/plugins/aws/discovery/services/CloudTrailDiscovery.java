@@ -57,7 +57,8 @@ public class CloudTrailDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = CloudTrail.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(CloudTrailClient.builder()).build()){
+    try {
+      final var client = clientCreator.shared(CloudTrailClient.class, CloudTrailClient::builder);
       client.listTrailsPaginator(ListTrailsRequest.builder().build()).trails()
         .forEach(trail -> {
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, trail.trailARN())
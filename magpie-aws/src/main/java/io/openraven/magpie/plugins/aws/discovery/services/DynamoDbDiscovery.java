@@ -66,10 +66,9 @@ public class DynamoDbDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(DynamoDbClient.builder()).build()) {
-      discoverGlobalTables(mapper, session, region, emitter, client, account);
-      discoverTables(mapper, session, region, emitter, client, account, clientCreator, logger);
-    }
+    final var client = clientCreator.shared(DynamoDbClient.class, DynamoDbClient::builder);
+    discoverGlobalTables(mapper, session, region, emitter, client, account);
+    discoverTables(mapper, session, region, emitter, client, account, clientCreator, logger);
   }
 
   protected void discoverGlobalTables(ObjectMapper mapper, Session session, Region region, Emitter emitter, DynamoDbClient client, String account) {
@@ -118,7 +117,7 @@ public class DynamoDbDiscovery implements AWSDiscovery {
 
           discoverSize(data);
           discoverContinuousBackups(client, table, data);
-          discoverTags(client, table, data, mapper);
+          discoverTags(client, table, data, mapper, clientCreator);
           discoverBackupJobs(table.tableArn(), region, data, clientCreator, logger);
           getCloudWatchMetrics(table, data, logger, clientCreator);
 
@@ -145,7 +144,10 @@ public class DynamoDbDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverTags(DynamoDbClient client, TableDescription resource, MagpieAwsResource data, ObjectMapper mapper) {
+  private void discoverTags(DynamoDbClient client, TableDescription resource, MagpieAwsResource data, ObjectMapper mapper, MagpieAWSClientCreator clientCreator) {
+    if (discoverIndexedTags(resource.tableArn(), data, mapper, clientCreator)) {
+      return;
+    }
     getAwsResponse(
       () -> client.listTagsOfResource(ListTagsOfResourceRequest.builder().resourceArn(resource.tableArn()).build()),
       (resp) -> AWSUtils.update(data.tags, mapper.convertValue(resp.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value)), JsonNode.class)),
@@ -31,6 +31,7 @@ import io.openraven.magpie.data.aws.ec2.Ec2NetworkAcl;
 import io.openraven.magpie.data.aws.ec2.Ec2TransitGateway;
 import io.openraven.magpie.plugins.aws.discovery.AWSDiscoveryPlugin;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.CallMemo;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
@@ -79,13 +80,12 @@ public class EC2Discovery implements AWSDiscovery {
 
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(Ec2Client.builder()).build()) {
-      discoverEc2Instances(mapper, session, client, region, emitter, account, clientCreator, logger);
-      discoverEIPs(mapper, session, client, region, emitter, account);
-      discoverSecurityGroups(mapper, session, client, region, emitter, account, logger);
-      discoverNetworkAcls(mapper, session, client, region, emitter, account);
-      discoverTransitGateway(mapper, session, client, region, emitter, account);
-    }
+    final var client = clientCreator.shared(Ec2Client.class, Ec2Client::builder);
+    discoverEc2Instances(mapper, session, client, region, emitter, account, clientCreator, logger);
+    discoverEIPs(mapper, session, client, region, emitter, account);
+    discoverSecurityGroups(mapper, session, client, region, emitter, account, logger);
+    discoverNetworkAcls(mapper, session, client, region, emitter, account);
+    discoverTransitGateway(mapper, session, client, region, emitter, account);
   }
 
   @Override
@@ -244,7 +244,9 @@ public class EC2Discovery implements AWSDiscovery {
     final String RESOURCE_TYPE = Ec2TransitGateway.RESOURCE_TYPE;
 
     try {
-      client.describeTransitGateways().transitGateways().forEach(transitGateway -> {
+      // Each gateway's "transit" enrichment is the same unfiltered listing, so it is fetched once for all of them.
+      final var memo = new CallMemo();
+      memo.call(DescribeTransitGatewaysRequest.builder().build(), client::describeTransitGateways).transitGateways().forEach(transitGateway -> {
           String arn = format("arn:aws:ec2:%s:%s:transit-gateway/%s", region, account,
             transitGateway.transitGatewayId());
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
@@ -257,7 +259,7 @@ public class EC2Discovery implements AWSDiscovery {
             .withTags(getConvertedTags(transitGateway.tags(), mapper))
             .build();
 
-          discoverTransit(client, data);
+          discoverTransit(client, memo, data);
 
           emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(AWSDiscoveryPlugin.ID + ":TransitGateway"), data.toJsonNode()));
         });
@@ -266,11 +268,11 @@ public class EC2Discovery implements AWSDiscovery {
     }
   }
 
-  private void discoverTransit(Ec2Client client, MagpieAwsResource data) {
+  private void discoverTransit(Ec2Client client, CallMemo memo, MagpieAwsResource data) {
     final String keyname = "transit";
 
     getAwsResponse(
-      () -> client.describeTransitGateways(DescribeTransitGatewaysRequest.builder().build()),
+      () -> memo.call(DescribeTransitGatewaysRequest.builder().build(), client::describeTransitGateways),
       resp -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       noresp -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
@@ -52,10 +52,9 @@ public class EC2StorageDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(Ec2Client.builder()).build()) {
-      discoverSnapshots(mapper, session, client, region, emitter, account, logger);
-      discoverVolumes(mapper, session, client, region, emitter, account, logger);
-    }
+    final var client = clientCreator.shared(Ec2Client.class, Ec2Client::builder);
+    discoverSnapshots(mapper, session, client, region, emitter, account, logger);
+    discoverVolumes(mapper, session, client, region, emitter, account, logger);
   }
 
   private void discoverSnapshots(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account, Logger logger) {
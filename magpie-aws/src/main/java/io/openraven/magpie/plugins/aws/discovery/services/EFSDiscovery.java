@@ -57,7 +57,8 @@ public class EFSDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EfsFileSystem.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(EfsClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(EfsClient.class, EfsClient::builder);
       client.describeFileSystems().fileSystems().forEach(fileSystem -> {
         String arn = String.format("arn:aws:elasticfilesystem:%s:%s:file-system/%s", region, fileSystem.ownerId(), fileSystem.fileSystemId());
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
@@ -66,7 +66,8 @@ public class EKSDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EksCluster.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(EksClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(EksClient.class, EksClient::builder);
       client.listClustersPaginator().clusters()
         .stream()
         .map(clusterName -> client.describeCluster(DescribeClusterRequest.builder().name(clusterName).build()))
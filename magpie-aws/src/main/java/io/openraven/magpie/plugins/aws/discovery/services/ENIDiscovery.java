@@ -49,9 +49,8 @@ public class ENIDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(Ec2Client.builder()).build()) {
-      discoverNetworkInterfaces(mapper, session, client, region, emitter, account);
-    }
+    final var client = clientCreator.shared(Ec2Client.class, Ec2Client::builder);
+    discoverNetworkInterfaces(mapper, session, client, region, emitter, account);
   }
 
   private void discoverNetworkInterfaces(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account) {
@@ -58,7 +58,8 @@ public class FSXDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = FSxFileSystem.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(FSxClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(FSxClient.class, FSxClient::builder);
       client.describeFileSystems().fileSystems().forEach(fileSystem -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, fileSystem.resourceARN())
           .withResourceName(fileSystem.fileSystemId())
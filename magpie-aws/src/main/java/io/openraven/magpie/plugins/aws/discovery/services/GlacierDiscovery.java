@@ -66,7 +66,8 @@ public class GlacierDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = GlacierVault.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(GlacierClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(GlacierClient.class, GlacierClient::builder);
       client.listVaultsPaginator().vaultList().stream().forEach(vault -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, vault.vaultARN())
           .withResourceName(vault.vaultName())
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.EntityType;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsRequest;
+import software.amazon.awssdk.services.iam.model.Group;
+import software.amazon.awssdk.services.iam.model.GroupDetail;
+import software.amazon.awssdk.services.iam.model.ManagedPolicyDetail;
+import software.amazon.awssdk.services.iam.model.PolicyVersion;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.iam.model.RoleDetail;
+import software.amazon.awssdk.services.iam.model.User;
+import software.amazon.awssdk.services.iam.model.UserDetail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An account's users, groups, roles and managed policies, with their inline and attached policies, as returned by a
+ * handful of paged GetAccountAuthorizationDetails calls.  Entities are converted to the same model objects that the
+ * List and Get calls return, so bulk discovery emits resources of the same shape.  GetAccountAuthorizationDetails
+ * omits a few attributes of those (a role's description and maximum session duration, a user's password last used
+ * date), which are therefore absent from resources discovered this way.
+ */
+class IAMAuthorizationDetails {
+
+  private final List<UserDetail> users = new ArrayList<>();
+  private final List<GroupDetail> groups = new ArrayList<>();
+  private final List<RoleDetail> roles = new ArrayList<>();
+  private final Map<String, ManagedPolicyDetail> policies = new HashMap<>();
+  private final Map<String, String> groupArns = new HashMap<>();
+
+  /**
+   * @param awsManagedPolicies Whether to include AWS-managed policies, which are the same in every account and make up
+   *                           most of the response.
+   */
+  static IAMAuthorizationDetails fetch(IamClient client, boolean awsManagedPolicies) {
+    final var details = new IAMAuthorizationDetails();
+    final var filter = new ArrayList<>(List.of(EntityType.USER, EntityType.GROUP, EntityType.ROLE, EntityType.LOCAL_MANAGED_POLICY));
+    if (awsManagedPolicies) {
+      filter.add(EntityType.AWS_MANAGED_POLICY);
+    }
+    client.getAccountAuthorizationDetailsPaginator(GetAccountAuthorizationDetailsRequest.builder()
+      .filter(filter)
+      .build()).forEach(page -> {
+        details.users.addAll(page.userDetailList());
+        details.groups.addAll(page.groupDetailList());
+        details.roles.addAll(page.roleDetailList());
+        page.policies().forEach(policy -> details.policies.put(policy.arn(), policy));
+      });
+    details.groups.forEach(group -> details.groupArns.put(group.groupName(), group.arn()));
+    return details;
+  }
+
+  List<UserDetail> getUsers() {
+    return users;
+  }
+
+  List<GroupDetail> getGroups() {
+    return groups;
+  }
+
+  List<RoleDetail> getRoles() {
+    return roles;
+  }
+
+  /**
+   * @return The ARN of one of the account's groups, by name.
+   */
+  Optional<String> getGroupArn(String groupName) {
+    return Optional.ofNullable(groupArns.get(groupName));
+  }
+
+  /**
+   * @return The still URL-encoded document of a managed policy's default version, if the policy was returned.
+   */
+  Optional<String> getDefaultPolicyDocument(String policyArn) {
+    return Optional.ofNullable(policies.get(policyArn))
+      .flatMap(policy -> policy.policyVersionList().stream().filter(PolicyVersion::isDefaultVersion).findFirst())
+      .map(PolicyVersion::document);
+  }
+
+  static User toUser(UserDetail user) {
+    return User.builder()
+      .path(user.path())
+      .userName(user.userName())
+      .userId(user.userId())
+      .arn(user.arn())
+      .createDate(user.createDate())
+      .permissionsBoundary(user.permissionsBoundary())
+      .tags(user.tags())
+      .build();
+  }
+
+  static Group toGroup(GroupDetail group) {
+    return Group.builder()
+      .path(group.path())
+      .groupName(group.groupName())
+      .groupId(group.groupId())
+      .arn(group.arn())
+      .createDate(group.createDate())
+      .build();
+  }
+
+  static Role toRole(RoleDetail role) {
+    return Role.builder()
+      .path(role.path())
+      .roleName(role.roleName())
+      .roleId(role.roleId())
+      .arn(role.arn())
+      .createDate(role.createDate())
+      .assumeRolePolicyDocument(role.assumeRolePolicyDocument())
+      .permissionsBoundary(role.permissionsBoundary())
+      .tags(role.tags())
+      .roleLastUsed(role.roleLastUsed())
+      .build();
+  }
+}
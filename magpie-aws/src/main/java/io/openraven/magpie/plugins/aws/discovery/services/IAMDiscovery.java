@@ -29,6 +29,7 @@ import io.openraven.magpie.data.aws.accounts.IamGroup;
 import io.openraven.magpie.data.aws.accounts.IamPolicy;
 import io.openraven.magpie.data.aws.accounts.IamRole;
 import io.openraven.magpie.data.aws.accounts.IamUser;
+import io.openraven.magpie.plugins.aws.discovery.AWSManagedPolicyCache;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
@@ -62,10 +63,16 @@ import software.amazon.awssdk.services.iam.model.Role;
 import software.amazon.awssdk.services.iam.model.Tag;
 import software.amazon.awssdk.services.iam.model.User;
 
+import jakarta.annotation.Nullable;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -78,6 +85,37 @@ public class IAMDiscovery implements AWSDiscovery {
   private static final String AWS_LINE_SEPARATOR = "\n";
   private static final String CREDENTIALS_REPORT = "::CredentialsReport";
 
+  // Report generation is polled with a backoff, for about as long as the five 30s sleeps it replaces waited.
+  private static final Duration REPORT_POLL_INITIAL_DELAY = Duration.ofSeconds(1);
+  private static final Duration REPORT_POLL_MAX_DELAY = Duration.ofSeconds(30);
+  private static final Duration REPORT_MAX_WAIT = Duration.ofSeconds(150);
+
+  private static final ScheduledExecutorService REPORT_POLLER = Executors.newSingleThreadScheduledExecutor(r -> {
+    final var t = new Thread(r, "aws-iam-credential-report");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private boolean bulkAuthorizationDetails = false;
+  @Nullable
+  private AWSManagedPolicyCache managedPolicyCache;
+
+  /**
+   * @param bulkAuthorizationDetails Whether to discover users, groups, roles and policy documents from
+   * GetAccountAuthorizationDetails, rather than listing each entity's details and policies separately.
+   */
+  public void setBulkAuthorizationDetails(boolean bulkAuthorizationDetails) {
+    this.bulkAuthorizationDetails = bulkAuthorizationDetails;
+  }
+
+  /**
+   * @param managedPolicyCache Where to look up, and keep, AWS-managed policy documents rather than fetching them for
+   * every account.  Null to always fetch them.
+   */
+  public void setManagedPolicyCache(@Nullable AWSManagedPolicyCache managedPolicyCache) {
+    this.managedPolicyCache = managedPolicyCache;
+  }
+
   @Override
   public String service() {
     return SERVICE;
@@ -91,13 +129,37 @@ public class IAMDiscovery implements AWSDiscovery {
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(IamClient.builder()).build()) {
-      discoverCredentialsReport(client, mapper, session, region, emitter, logger, account);
-      discoverAccounts(client, mapper, session, region, emitter, account);
+    final var client = clientCreator.shared(IamClient.class, IamClient::builder);
+    // Generated by AWS while the rest of the account is discovered.
+    final var report = requestCredentialsReport(client);
+    discoverAccounts(client, mapper, session, region, emitter, account);
+
+    final var details = bulkAuthorizationDetails ? fetchAuthorizationDetails(client, region, logger) : Optional.<IAMAuthorizationDetails>empty();
+    if (details.isPresent()) {
+      discoverGroups(details.get(), mapper, session, region, emitter, account);
+      discoverUsers(client, details.get(), mapper, session, region, emitter, account);
+      discoverRoles(details.get(), mapper, session, region, emitter, account);
+    } else {
       discoverGroups(client, mapper, session, region, emitter, account);
       discoverUsers(client, mapper, session, region, emitter, account);
       discoverRoles(client, mapper, session, region, emitter, account);
-      discoverPolicies(client, mapper, session, region, emitter, account);
+    }
+    discoverPolicies(client, details.orElse(null), mapper, session, region, emitter, account);
+    // Emitted by this unit, so that reports are downloaded in parallel and the unit only completes once it's emitted.
+    emitCredentialsReport(report, client, mapper, session, region, emitter, logger, account);
+  }
+
+  private Optional<IAMAuthorizationDetails> fetchAuthorizationDetails(IamClient client, Region region, Logger logger) {
+    try {
+      // AWS-managed policies are taken from the cache, and looked up one by one on a miss, rather than downloaded again
+      // for every account.  Only a cold cache is filled in bulk.
+      return Optional.of(IAMAuthorizationDetails.fetch(client, managedPolicyCache == null || managedPolicyCache.isEmpty()));
+    } catch (SdkServiceException ex) {
+      if (ex.statusCode() != 403) {
+        throw ex;
+      }
+      logger.warn("Not allowed to get IAM authorization details in {}, discovering entities individually: {}", region.id(), ex.getMessage());
+      return Optional.empty();
     }
   }
 
@@ -111,28 +173,11 @@ public class IAMDiscovery implements AWSDiscovery {
         Role role = client.getRole(builder -> builder.roleName(listedRole.roleName()).build()).role();
 
         JsonNode roleConfig = mapper.valueToTree(role.toBuilder());
-
-        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, role.arn())
-          .withResourceName(role.roleName())
-          .withResourceId(role.roleId())
-          .withResourceType(RESOURCE_TYPE)
-          .withConfiguration(roleConfig)
-          .withCreatedIso(role.createDate())
-          .withAccountId(account)
-          .withAwsRegion(region.toString())
-          .withTags(mapper.convertValue(
-                  role.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value)),
-                  JsonNode.class)
-          ).build();
+        var data = newRoleResource(mapper, region, account, role, roleConfig);
 
         discoverAttachedPolicies(client, data, role);
         discoverInlinePolicies(mapper, client, data, role);
-
-        Optional<JsonNode> assumeRolePolicyDocument = Optional.ofNullable(roleConfig.get("assumeRolePolicyDocument"));
-
-        assumeRolePolicyDocument.ifPresent( policy ->
-          AWSUtils.update(data.supplementaryConfiguration, Map.of("assumeRolePolicy",  AWSUtils.parsePolicyDocument(mapper, policy.textValue())))
-        );
+        discoverAssumeRolePolicy(mapper, data, roleConfig);
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":role"), data.toJsonNode()));
       });
@@ -141,6 +186,52 @@ public class IAMDiscovery implements AWSDiscovery {
     }
   }
 
+  private void discoverRoles(IAMAuthorizationDetails details, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
+    details.getRoles().forEach(roleDetail -> {
+      Role role = IAMAuthorizationDetails.toRole(roleDetail);
+
+      JsonNode roleConfig = mapper.valueToTree(role.toBuilder());
+      var data = newRoleResource(mapper, region, account, role, roleConfig);
+
+      AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", roleDetail.attachedManagedPolicies().stream()
+        .map(attachedRolePolicy -> ImmutableMap.of(
+          "name", attachedRolePolicy.policyName(),
+          "arn", attachedRolePolicy.policyArn()))
+        .collect(Collectors.toList())));
+      AWSUtils.update(data.supplementaryConfiguration, Map.of("inlinePolicies", roleDetail.rolePolicyList().stream()
+        .map(policy -> ImmutableMap.of(
+          "name", mapper.valueToTree(policy.policyName()),
+          "policyDocument", AWSUtils.parsePolicyDocument(mapper, policy.policyDocument())))
+        .collect(Collectors.toList())));
+      discoverAssumeRolePolicy(mapper, data, roleConfig);
+
+      emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":role"), data.toJsonNode()));
+    });
+  }
+
+  private MagpieAwsResource newRoleResource(ObjectMapper mapper, Region region, String account, Role role, JsonNode roleConfig) {
+    return new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, role.arn())
+      .withResourceName(role.roleName())
+      .withResourceId(role.roleId())
+      .withResourceType(IamRole.RESOURCE_TYPE)
+      .withConfiguration(roleConfig)
+      .withCreatedIso(role.createDate())
+      .withAccountId(account)
+      .withAwsRegion(region.toString())
+      .withTags(mapper.convertValue(
+              role.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value)),
+              JsonNode.class)
+      ).build();
+  }
+
+  private void discoverAssumeRolePolicy(ObjectMapper mapper, MagpieAwsResource data, JsonNode roleConfig) {
+    Optional<JsonNode> assumeRolePolicyDocument = Optional.ofNullable(roleConfig.get("assumeRolePolicyDocument"));
+
+    assumeRolePolicyDocument.ifPresent( policy ->
+      AWSUtils.update(data.supplementaryConfiguration, Map.of("assumeRolePolicy",  AWSUtils.parsePolicyDocument(mapper, policy.textValue())))
+    );
+  }
+
   private void discoverInlinePolicies(ObjectMapper mapper, IamClient client, MagpieAwsResource data, Role role) {
     List<ImmutableMap<String, JsonNode>> inlinePolicies = new ArrayList<>();
 
@@ -176,6 +267,14 @@ public class IAMDiscovery implements AWSDiscovery {
   }
 
   protected void discoverPolicies(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
+    discoverPolicies(client, null, mapper, session, region, emitter, account);
+  }
+
+  /**
+   * @param details When given, policy documents are taken from it, and only looked up separately for policies it
+   * doesn't include.
+   */
+  private void discoverPolicies(IamClient client, @Nullable IAMAuthorizationDetails details, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
     final String RESOURCE_TYPE = IamPolicy.RESOURCE_TYPE;
 
     try {
@@ -190,7 +289,19 @@ public class IAMDiscovery implements AWSDiscovery {
           .withAwsRegion(region.toString())
           .build();
 
-        discoverPolicyDocument(mapper, client, data, policy);
+        final var awsManaged = managedPolicyCache != null && AWSManagedPolicyCache.isAwsManaged(policy.arn());
+        final var cached = awsManaged ? managedPolicyCache.getDocument(policy.arn(), policy.defaultVersionId()) : Optional.<String>empty();
+        final var detailed = details == null ? Optional.<String>empty() : details.getDefaultPolicyDocument(policy.arn());
+        if (cached.isPresent()) {
+          updatePolicyDocument(data, managedPolicyCache.getParsedDocument(mapper, policy.arn(), policy.defaultVersionId()).orElseThrow(), cached.get());
+        } else if (detailed.isPresent()) {
+          updatePolicyDocument(mapper, data, detailed.get());
+          if (awsManaged) {
+            managedPolicyCache.put(policy.arn(), policy.defaultVersionId(), detailed.get());
+          }
+        } else {
+          discoverPolicyDocument(mapper, client, data, policy, awsManaged);
+        }
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":policy"), data.toJsonNode()));
       });
@@ -199,7 +310,7 @@ public class IAMDiscovery implements AWSDiscovery {
     }
   }
 
-  private void discoverPolicyDocument(ObjectMapper mapper, IamClient client, MagpieAwsResource data, Policy policy) {
+  private void discoverPolicyDocument(ObjectMapper mapper, IamClient client, MagpieAwsResource data, Policy policy, boolean cache) {
     getAwsResponse(
       () -> client.listPolicyVersionsPaginator(ListPolicyVersionsRequest.builder().policyArn(policy.arn()).build()),
       (resp) -> resp.forEach(policyVersionsResponse -> {
@@ -213,11 +324,11 @@ public class IAMDiscovery implements AWSDiscovery {
             .versionId(policyVersion.versionId())
             .build()),
           (innerResp) -> {
-            AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", Map.of("policyDocument",
-              AWSUtils.parsePolicyDocument(mapper, innerResp.policyVersion().document()))));
-            // PROD-2760 requires the encoded policy doc under this key
-            AWSUtils.update(data.supplementaryConfiguration, Map.of("policyDocument", innerResp.policyVersion().document()));
-        },
+            updatePolicyDocument(mapper, data, innerResp.policyVersion().document());
+            if (cache) {
+              managedPolicyCache.put(policy.arn(), policyVersion.versionId(), innerResp.policyVersion().document());
+            }
+          },
           (innerNoresp) -> {
           }
         ));
@@ -227,6 +338,16 @@ public class IAMDiscovery implements AWSDiscovery {
     );
   }
 
+  private void updatePolicyDocument(ObjectMapper mapper, MagpieAwsResource data, String document) {
+    updatePolicyDocument(data, AWSUtils.parsePolicyDocument(mapper, document), document);
+  }
+
+  private void updatePolicyDocument(MagpieAwsResource data, JsonNode parsedDocument, String document) {
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", Map.of("policyDocument", parsedDocument)));
+    // PROD-2760 requires the encoded policy doc under this key
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("policyDocument", document));
+  }
+
   private void discoverUsers(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter
     emitter, String account) {
     final String RESOURCE_TYPE = IamUser.RESOURCE_TYPE;
@@ -257,6 +378,50 @@ public class IAMDiscovery implements AWSDiscovery {
     }
   }
 
+  private void discoverUsers(IamClient client, IAMAuthorizationDetails details, ObjectMapper mapper, Session session, Region region, Emitter
+    emitter, String account) {
+    final String RESOURCE_TYPE = IamUser.RESOURCE_TYPE;
+
+    try {
+      details.getUsers().forEach(userDetail -> {
+        User user = IAMAuthorizationDetails.toUser(userDetail);
+        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, user.arn())
+          .withResourceName(user.userName())
+          .withResourceId(user.userId())
+          .withResourceType(RESOURCE_TYPE)
+          .withConfiguration(mapper.valueToTree(user.toBuilder()))
+          .withCreatedIso(user.createDate())
+          .withAccountId(account)
+          .withAwsRegion(region.toString())
+          .build();
+
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("groups", userDetail.groupList().stream()
+          .flatMap(groupName -> details.getGroupArn(groupName).map(arn -> ImmutableMap.of(
+            "name", groupName,
+            "arn", arn)).stream())
+          .collect(Collectors.toList())));
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", userDetail.attachedManagedPolicies().stream()
+          .map(attachUserPolicy -> ImmutableMap.of(
+            "name", attachUserPolicy.policyName(),
+            "arn", attachUserPolicy.policyArn()))
+          .collect(Collectors.toList())));
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("userPolicies", userDetail.userPolicyList().stream()
+          .map(policy -> ImmutableMap.of(
+            "name", policy.policyName(),
+            "policyDocument", policy.policyDocument()))
+          .collect(Collectors.toList())));
+        // MFA devices aren't part of the authorization details.
+        discoverUserMFADevices(client, data, user);
+
+        AWSUtils.update(data.tags, mapper.convertValue(user.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value)), JsonNode.class));
+
+        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":user"), data.toJsonNode()));
+      });
+    } catch (SdkServiceException | SdkClientException ex) {
+      DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
+    }
+  }
+
   private void discoverGroupsForUser(IamClient client, MagpieAwsResource data, User user) {
     List<ImmutableMap<String, String>> attachedPolicies = new ArrayList<>();
 
@@ -348,6 +513,35 @@ public class IAMDiscovery implements AWSDiscovery {
     }
   }
 
+  private void discoverGroups(IAMAuthorizationDetails details, ObjectMapper mapper, Session session, Region region, Emitter
+    emitter, String account) {
+    details.getGroups().forEach(groupDetail -> {
+      Group group = IAMAuthorizationDetails.toGroup(groupDetail);
+      var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, group.arn())
+        .withResourceName(group.groupName())
+        .withResourceId(group.groupId())
+        .withResourceType(IamGroup.RESOURCE_TYPE)
+        .withConfiguration(mapper.valueToTree(group.toBuilder()))
+        .withCreatedIso(group.createDate())
+        .withAccountId(account)
+        .withAwsRegion(region.toString())
+        .build();
+
+      AWSUtils.update(data.supplementaryConfiguration, Map.of("inlinePolicies", groupDetail.groupPolicyList().stream()
+        .map(policy -> ImmutableMap.of(
+          "name", policy.policyName(),
+          "policyDocument", policy.policyDocument()))
+        .collect(Collectors.toList())));
+      AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", groupDetail.attachedManagedPolicies().stream()
+        .map(attachedGroupPolicy -> ImmutableMap.of(
+          "name", attachedGroupPolicy.policyName(),
+          "arn", attachedGroupPolicy.policyArn()))
+        .collect(Collectors.toList())));
+
+      emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":group"), data.toJsonNode()));
+    });
+  }
+
   private void discoverGroupInlinePolicies(IamClient client, MagpieAwsResource data, Group group) {
     List<ImmutableMap<String, String>> inlinePolicies = new ArrayList<>();
 
@@ -440,36 +634,52 @@ public class IAMDiscovery implements AWSDiscovery {
 
   protected void discoverCredentialsReport(IamClient client, ObjectMapper mapper, Session session, Region
     region, Emitter emitter, Logger logger, String account) {
-    getAwsResponse(
-      () -> generateCredentialReport(client),
-      (resp) -> {
-        if (resp) {
-          processCredentialsReport(client, mapper, session, region, emitter, account);
-        } else {
-          logger.error("Failed to generate credentialsReport in {}", region.id());
-        }
-      },
-      (noresp) -> logger.error("Failed to get credentialsReport in {}", region.id())
-    );
+    emitCredentialsReport(requestCredentialsReport(client), client, mapper, session, region, emitter, logger, account);
   }
 
-  private boolean generateCredentialReport(IamClient client) {
-    String status;
-    int numTries = 0;
-
-    status = client.generateCredentialReport().stateAsString();
-    while (!status.equals("COMPLETE") && numTries < 5) {
+  /**
+   * @return Completes with whether the report was generated in time, once generation has been polled for without
+   * holding up the caller.
+   */
+  private CompletableFuture<Boolean> requestCredentialsReport(IamClient client) {
+    final var generated = new CompletableFuture<Boolean>();
+    pollCredentialReport(client, generated, System.nanoTime(), REPORT_POLL_INITIAL_DELAY);
+    return generated;
+  }
 
-      try {
-        TimeUnit.SECONDS.sleep(30);
-      } catch (InterruptedException ex) {
-        Thread.currentThread().interrupt();
+  private void emitCredentialsReport(CompletableFuture<Boolean> generated, IamClient client, ObjectMapper mapper, Session session, Region
+    region, Emitter emitter, Logger logger, String account) {
+    try {
+      if (generated.join()) {
+        processCredentialsReport(client, mapper, session, region, emitter, account);
+      } else {
+        logger.error("Failed to generate credentialsReport in {}", region.id());
+      }
+    } catch (CompletionException | SdkServiceException | SdkClientException ex) {
+      final var cause = ex instanceof CompletionException ? ex.getCause() : ex;
+      if (cause instanceof SdkServiceException && ((SdkServiceException) cause).statusCode() >= 400 && ((SdkServiceException) cause).statusCode() < 500) {
+        logger.error("Failed to get credentialsReport in {}", region.id());
+      } else if (cause instanceof Exception) {
+        DiscoveryExceptions.onDiscoveryException("IAMCredentialsReport", null, region, (Exception) cause);
+      } else {
+        logger.error("Failed to get credentialsReport in {} - {}", region.id(), cause.getMessage());
       }
-      status = client.generateCredentialReport().stateAsString();
-      numTries++;
     }
+  }
 
-    return status.equals("COMPLETE");
+  private void pollCredentialReport(IamClient client, CompletableFuture<Boolean> generated, long startNanos, Duration delay) {
+    try {
+      if ("COMPLETE".equals(client.generateCredentialReport().stateAsString())) {
+        generated.complete(true);
+      } else if (Duration.ofNanos(System.nanoTime() - startNanos).plus(delay).compareTo(REPORT_MAX_WAIT) > 0) {
+        generated.complete(false);
+      } else {
+        final var next = delay.multipliedBy(2).compareTo(REPORT_POLL_MAX_DELAY) > 0 ? REPORT_POLL_MAX_DELAY : delay.multipliedBy(2);
+        REPORT_POLLER.schedule(() -> pollCredentialReport(client, generated, startNanos, next), delay.toMillis(), TimeUnit.MILLISECONDS);
+      }
+    } catch (RuntimeException ex) {
+      generated.completeExceptionally(ex);
+    }
   }
 
   private void processCredentialsReport(IamClient client, ObjectMapper mapper, Session session, Region
@@ -65,7 +65,8 @@ public class KMSDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = KmsKey.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(KmsClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(KmsClient.class, KmsClient::builder);
       client.listKeysPaginator().keys().forEach(key -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, key.keyArn())
           .withResourceName(key.toString())
@@ -80,7 +81,7 @@ public class KMSDiscovery implements AWSDiscovery {
         discoverAliases(client, key, data);
         discoverKeyPolicies(client, key, data);
         discoverGrants(client, key, data);
-        discoverTags(client, key, data, mapper);
+        discoverTags(client, key, data, mapper, clientCreator);
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService()), data.toJsonNode()));
       });
@@ -128,7 +129,10 @@ public class KMSDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverTags(KmsClient client, KeyListEntry resource, MagpieAwsResource data, ObjectMapper mapper) {
+  private void discoverTags(KmsClient client, KeyListEntry resource, MagpieAwsResource data, ObjectMapper mapper, MagpieAWSClientCreator clientCreator) {
+    if (discoverIndexedTags(resource.keyArn(), data, mapper, clientCreator)) {
+      return;
+    }
     getAwsResponse(
       () -> client.listResourceTags(ListResourceTagsRequest.builder().keyId(resource.keyId()).build()),
       (resp) -> {
@@ -62,7 +62,8 @@ public class LambdaDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = LambdaFunction.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(LambdaClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(LambdaClient.class, LambdaClient::builder);
       client.listFunctionsPaginator().functions().forEach(function -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, function.functionArn())
           .withResourceName(function.functionName())
@@ -86,13 +86,12 @@ public class LocationDiscovery implements AWSDiscovery {
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(LocationClient.builder()).build()) {
-      discoverTrackers(mapper, session, region, emitter, account, client);
-      discoverMaps(mapper, session, region, emitter, account, client);
-      discoverGeofenceCollections(mapper, session, region, emitter, account, client);
-      discoverPlaceIndex(mapper, session, region, emitter, account, client);
-      discoverRouteCalculators(mapper, session, region, emitter, account, client);
-    }
+    final var client = clientCreator.shared(LocationClient.class, LocationClient::builder);
+    discoverTrackers(mapper, session, region, emitter, account, client);
+    discoverMaps(mapper, session, region, emitter, account, client);
+    discoverGeofenceCollections(mapper, session, region, emitter, account, client);
+    discoverPlaceIndex(mapper, session, region, emitter, account, client);
+    discoverRouteCalculators(mapper, session, region, emitter, account, client);
   }
 
   private void discoverTrackers(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
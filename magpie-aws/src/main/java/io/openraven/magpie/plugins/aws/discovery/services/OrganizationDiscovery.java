@@ -43,9 +43,8 @@ public class OrganizationDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(OrganizationsClient.builder()).build()) {
-      discoverPolicies(client, mapper, session, region, emitter, account);
-    }
+    final var client = clientCreator.shared(OrganizationsClient.class, OrganizationsClient::builder);
+    discoverPolicies(client, mapper, session, region, emitter, account);
   }
 
   protected void discoverPolicies(OrganizationsClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
@@ -69,7 +69,8 @@ public class QLDBDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = QldbLedger.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(QldbClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(QldbClient.class, QldbClient::builder);
       client.listLedgersPaginator(ListLedgersRequest.builder().build()).stream()
         .forEach(ledgerList -> ledgerList.ledgers()
           .stream()
@@ -26,18 +26,19 @@ import io.openraven.magpie.data.aws.rds.RDSInstance;
 import io.openraven.magpie.data.aws.rds.RDSSnapshot;
 import io.openraven.magpie.data.aws.rds.RDSProxy;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.CloudWatchMetricsBatch;
+import io.openraven.magpie.plugins.aws.discovery.CloudWatchMetricsBatch.Window;
 import io.openraven.magpie.plugins.aws.discovery.Conversions;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
-import org.javatuples.Pair;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.cloudwatch.model.Datapoint;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 import software.amazon.awssdk.services.rds.RdsClient;
 import software.amazon.awssdk.services.rds.model.DBInstance;
 import software.amazon.awssdk.services.rds.model.*;
@@ -70,12 +71,12 @@ public class RDSDiscovery implements AWSDiscovery {
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(RdsClient.builder()).build()) {
-      discoverDbProxy(mapper, session, region, emitter, account, client);
-      discoverDbSnapshot(mapper, session, region, emitter, account, client);
-      discoverDbInstances(mapper, session, region, emitter, logger, account, client, clientCreator);
-      discoverDbAuoraClusters(mapper, session, region, emitter, logger, account, client, clientCreator);
-    }
+    final var client = clientCreator.shared(RdsClient.class, RdsClient::builder);
+    final var metrics = new CloudWatchMetricsBatch(clientCreator.shared(CloudWatchClient.class, CloudWatchClient::builder));
+    discoverDbProxy(mapper, session, region, emitter, account, client);
+    discoverDbSnapshot(mapper, session, region, emitter, account, client);
+    discoverDbInstances(mapper, session, region, emitter, logger, account, client, clientCreator, metrics);
+    discoverDbAuoraClusters(mapper, session, region, emitter, logger, account, client, clientCreator, metrics);
   }
 
   private void discoverDbProxy(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, RdsClient client) {
@@ -125,8 +126,10 @@ public class RDSDiscovery implements AWSDiscovery {
     }
   }
 
-  private void discoverDbInstances(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator) {
+  private void discoverDbInstances(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator, CloudWatchMetricsBatch metrics) {
     final String RESOURCE_TYPE = RDSInstance.RESOURCE_TYPE;
+    // Instances are emitted once the region's metrics have been fetched together.
+    final var instances = new ArrayList<MagpieAwsResource>();
     try {
       client.describeDBInstancesPaginator().dbInstances().stream()
         .forEach(db -> {
@@ -145,25 +148,29 @@ public class RDSDiscovery implements AWSDiscovery {
               logger.warn("DBInstance has NULL CreateTime: dbInstanceArn=\"{}\"", db.dbInstanceArn());
             }
 
-            discoverTags(client, db, data, mapper);
+            discoverTags(client, db, data, mapper, clientCreator);
             discoverInstanceDbSnapshots(client, db, data);
-            discoverInstanceSize(db, data, logger, clientCreator);
+            discoverInstanceSize(db, data, logger, metrics);
             discoverInstanceDbProxies(client, db, data);
 
-            discoverCloudWatchInstanceUsageMetrics(client, db, data, logger, clientCreator);
+            discoverCloudWatchInstanceUsageMetrics(db, data, logger, metrics);
 
             discoverBackupJobs(db.dbInstanceArn(), region, data, clientCreator, logger);
 
-            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbInstance"), data.toJsonNode()));
+            instances.add(data);
           }
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
+
+    metrics.resolve();
+    instances.forEach(data -> emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbInstance"), data.toJsonNode())));
   }
 
-  private void discoverDbAuoraClusters(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator) {
+  private void discoverDbAuoraClusters(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator, CloudWatchMetricsBatch metrics) {
     final String RESOURCE_TYPE = RDSInstance.RESOURCE_TYPE;
+    final var clusters = new ArrayList<MagpieAwsResource>();
     try {
       client.describeDBClustersPaginator().dbClusters().stream()
         .forEach(cluster -> {
@@ -181,23 +188,29 @@ public class RDSDiscovery implements AWSDiscovery {
             logger.warn("DBCluster has NULL CreateTime: dbClusterArn=\"{}\"", cluster.dbClusterArn());
           }
 
-          discoverTags(client, cluster, data, mapper);
+          discoverTags(client, cluster, data, mapper, clientCreator);
           discoverDbClusterInstances(client, cluster, data);
           discoverDbClusterSnapshots(client, cluster, data);
-          discoverClusterSize(cluster, data, logger, clientCreator);
+          discoverClusterSize(cluster, data, logger, metrics);
 
           discoverBackupJobs(cluster.dbClusterArn(), region, data, clientCreator, logger);
 
-          discoverCloudWatchClusterUsageMetrics(client, cluster, data, logger, clientCreator);
+          discoverCloudWatchClusterUsageMetrics(client, cluster, data, logger, metrics);
 
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbInstance"), data.toJsonNode()));
+          clusters.add(data);
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
+
+    metrics.resolve();
+    clusters.forEach(data -> emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbInstance"), data.toJsonNode())));
   }
 
-  private void discoverTags(RdsClient client, DBInstance resource, MagpieAwsResource data, ObjectMapper mapper) {
+  private void discoverTags(RdsClient client, DBInstance resource, MagpieAwsResource data, ObjectMapper mapper, MagpieAWSClientCreator clientCreator) {
+    if (discoverIndexedTags(resource.dbInstanceArn(), data, mapper, clientCreator)) {
+      return;
+    }
     getAwsResponse(
       () -> client.listTagsForResource(ListTagsForResourceRequest.builder().resourceName(resource.dbInstanceArn()).build()),
       (resp) -> {
@@ -209,7 +222,10 @@ public class RDSDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverTags(RdsClient client, DBCluster resource, MagpieAwsResource data, ObjectMapper mapper) {
+  private void discoverTags(RdsClient client, DBCluster resource, MagpieAwsResource data, ObjectMapper mapper, MagpieAWSClientCreator clientCreator) {
+    if (discoverIndexedTags(resource.dbClusterArn(), data, mapper, clientCreator)) {
+      return;
+    }
     getAwsResponse(
       () -> client.listTagsForResource(ListTagsForResourceRequest.builder().resourceName(resource.dbClusterArn()).build()),
       (resp) -> {
@@ -266,23 +282,23 @@ public class RDSDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverInstanceSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void discoverInstanceSize(DBInstance resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
     // get the DB engine and call the relevant function (as although RDS uses same client, the metrics available are different)
     String engine = resource.engine();
     if (engine != null) {
       if ("docdb".equalsIgnoreCase(engine)) {
         // although DocDB uses RDS client, it's metrics are subtly different, so get metrics via setDocDBSize
-        setDocDBSize(resource, data, logger, clientCreator);
+        setDocDBSize(resource, data, logger, metrics);
       } else {
-        setRDSSize(resource, data, logger, clientCreator);
+        setRDSSize(resource, data, logger, metrics);
       }
     } else {
       logger.warn("{} RDS instance is missing engine property", resource.dbInstanceIdentifier());
     }
   }
 
-  private void discoverClusterSize(DBCluster resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
-    setAuroraDBSize(resource, data, logger, clientCreator);
+  private void discoverClusterSize(DBCluster resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
+    setAuroraDBSize(resource, data, logger, metrics);
   }
 
   private void setSizingInfo(MagpieAwsResource data, long sizeInBytes, long maxSizeInBytes) {
@@ -290,96 +306,85 @@ public class RDSDiscovery implements AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("maxSizeInBytes", maxSizeInBytes));
   }
 
-  private void setRDSSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
-    try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBInstanceIdentifier").value(resource.dbInstanceIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> freeStorageSpace =
-        AWSUtils.getCloudwatchMetricMinimum(data.awsRegion, "AWS/RDS", "FreeStorageSpace", dimensions, clientCreator);
+  private void setRDSSize(DBInstance resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
+    List<Dimension> dimensions = new ArrayList<>();
+    dimensions.add(Dimension.builder().name("DBInstanceIdentifier").value(resource.dbInstanceIdentifier()).build());
+    metrics.add(Window.RECENT, "AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, dimensions, datapoints -> {
+      try {
+        final Long freeStorageSpace = CloudWatchMetricsBatch.maxAsLong(datapoints);
 
-      if (freeStorageSpace.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("FreeStorageSpace", freeStorageSpace.getValue0())));
+        if (freeStorageSpace != null) {
+          AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("FreeStorageSpace", freeStorageSpace)));
 
-        // pull the relevant node(s) from the payload object. See https://boto3.amazonaws.com/v1/documentation/api/latest/reference/services/rds.html
-        long freeStorageCapacity = freeStorageSpace.getValue0();
-        long storageCapacity = resource.allocatedStorage();
+          // pull the relevant node(s) from the payload object. See https://boto3.amazonaws.com/v1/documentation/api/latest/reference/services/rds.html
+          long freeStorageCapacity = freeStorageSpace;
+          long storageCapacity = resource.allocatedStorage();
 
-        final var sizeInBytes = Conversions.GibToBytes(storageCapacity) - freeStorageCapacity;
-        final var maxSizeInBytes = Conversions.GibToBytes(storageCapacity);
+          final var sizeInBytes = Conversions.GibToBytes(storageCapacity) - freeStorageCapacity;
+          final var maxSizeInBytes = Conversions.GibToBytes(storageCapacity);
 
-        data.sizeInBytes = sizeInBytes;
-        data.maxSizeInBytes = maxSizeInBytes;
-        setSizingInfo(data, sizeInBytes, maxSizeInBytes);
+          data.sizeInBytes = sizeInBytes;
+          data.maxSizeInBytes = maxSizeInBytes;
+          setSizingInfo(data, sizeInBytes, maxSizeInBytes);
 
-      } else {
-        logger.warn("{} RDS instance is missing size metrics", resource.dbInstanceIdentifier());
+        } else {
+          logger.warn("{} RDS instance is missing size metrics", resource.dbInstanceIdentifier());
+        }
+      } catch (Exception se) {
+        logger.warn("{} RDS instance is missing size metrics, with error {}", resource.dbInstanceIdentifier(), se.getMessage());
       }
-    } catch (Exception se) {
-      logger.warn("{} RDS instance is missing size metrics, with error {}", resource.dbInstanceIdentifier(), se.getMessage());
-    }
+    });
   }
 
-  private void setDocDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
-    try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbInstanceIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> volumeBytesUsed =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/DocDB", "VolumeBytesUsed", dimensions, clientCreator);
+  private void setDocDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
+    List<Dimension> dimensions = new ArrayList<>();
+    dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbInstanceIdentifier()).build());
+    metrics.add(Window.RECENT, "AWS/DocDB", "VolumeBytesUsed", Statistic.MAXIMUM, dimensions, datapoints -> {
+      try {
+        final Long volumeBytesUsed = CloudWatchMetricsBatch.maxAsLong(datapoints);
 
-      if (volumeBytesUsed.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.getValue0())));
+        if (volumeBytesUsed != null) {
+          AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed)));
 
-        final var sizeInBytes = volumeBytesUsed.getValue0();
-        final var maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
+          final var maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
 
-        data.sizeInBytes = sizeInBytes;
-        data.maxSizeInBytes = maxSizeInBytes;
-        setSizingInfo(data, sizeInBytes, maxSizeInBytes);
+          data.sizeInBytes = volumeBytesUsed;
+          data.maxSizeInBytes = maxSizeInBytes;
+          setSizingInfo(data, volumeBytesUsed, maxSizeInBytes);
+        }
+      } catch (Exception se) {
+        logger.warn("{} RDS instance is missing size metrics, with error {}", resource.dbInstanceArn(), se.getMessage());
       }
-    } catch (Exception se) {
-      logger.warn("{} RDS instance is missing size metrics, with error {}", resource.dbInstanceArn(), se.getMessage());
-    }
+    });
   }
 
-  private void setAuroraDBSize(DBCluster resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
-    try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbClusterIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> volumeBytesUsed =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/RDS", "VolumeBytesUsed", dimensions, clientCreator);
+  private void setAuroraDBSize(DBCluster resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
+    List<Dimension> dimensions = new ArrayList<>();
+    dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbClusterIdentifier()).build());
+    metrics.add(Window.RECENT, "AWS/RDS", "VolumeBytesUsed", Statistic.MAXIMUM, dimensions, datapoints -> {
+      try {
+        final Long volumeBytesUsed = CloudWatchMetricsBatch.maxAsLong(datapoints);
 
-      if (volumeBytesUsed.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.getValue0())));
+        if (volumeBytesUsed != null) {
+          AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed)));
 
-        final var sizeInBytes = volumeBytesUsed.getValue0();
-        final var maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
+          final var maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
 
-        data.sizeInBytes = sizeInBytes;
-        data.maxSizeInBytes = maxSizeInBytes;
-        setSizingInfo(data, sizeInBytes, maxSizeInBytes);
+          data.sizeInBytes = volumeBytesUsed;
+          data.maxSizeInBytes = maxSizeInBytes;
+          setSizingInfo(data, volumeBytesUsed, maxSizeInBytes);
+        }
+      } catch (Exception se) {
+        logger.warn("{} RDS cluster is missing size metrics, with error {}", resource.dbClusterArn(), se.getMessage());
       }
-    } catch (Exception se) {
-      logger.warn("{} RDS cluster is missing size metrics, with error {}", resource.dbClusterArn(), se.getMessage());
-    }
-  }
-
-  private Map<String, Double> formatDataMapAvg(List<Datapoint> map) {
-    Map<String, Double> datapointMetrics = new HashMap<>();
-    for (Datapoint dp : map) {
-      datapointMetrics.put(dp.timestamp().toString(), dp.average());
-    }
-    return datapointMetrics;
-  }
-
-  private Map<String, Double> formatDataMapSum(List<Datapoint> map) {
-    Map<String, Double> datapointMetrics = new HashMap<>();
-    for (Datapoint dp : map) {
-      datapointMetrics.put(dp.timestamp().toString(), dp.sum());
-    }
-    return datapointMetrics;
+    });
   }
 
-  private Map<String, Object> getRDSCloudWatchMetrics(String identifier, String engine, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  /**
+   * Queues the connection and IOPS metrics of an instance, or of an aurora-mysql cluster.  The returned map is filled
+   * in as the batch resolves.
+   */
+  private Map<String, Object> getRDSCloudWatchMetrics(String identifier, String engine, CloudWatchMetricsBatch metrics) {
     String readMetric;
     String writeMetric;
     Map<String, Object> requestMetrics = new HashMap<>();
@@ -395,51 +400,47 @@ public class RDSDiscovery implements AWSDiscovery {
       writeMetric = "WriteIOPS";
     }
 
-    List<Datapoint> connections =
-      AWSUtils.getCloudwatchMetricStaleDataSum(data.awsRegion, "AWS/RDS", "DatabaseConnections", dimensions, clientCreator);
-    requestMetrics.put("DatabaseConnections", formatDataMapSum(connections));
+    metrics.add(Window.STALE_DATA, "AWS/RDS", "DatabaseConnections", Statistic.SUM, dimensions,
+      connections -> requestMetrics.put("DatabaseConnections", CloudWatchMetricsBatch.byTimestamp(connections)));
 
-    List<Datapoint> writeIOPS =
-      AWSUtils.getCloudwatchMetricStaleDataAvg(data.awsRegion, "AWS/RDS", writeMetric, dimensions, clientCreator);
-    requestMetrics.put(writeMetric, formatDataMapAvg(writeIOPS));
+    metrics.add(Window.STALE_DATA, "AWS/RDS", writeMetric, Statistic.AVERAGE, dimensions,
+      writeIOPS -> requestMetrics.put(writeMetric, CloudWatchMetricsBatch.byTimestamp(writeIOPS)));
 
-    List<Datapoint> readIOPS =
-      AWSUtils.getCloudwatchMetricStaleDataAvg(data.awsRegion, "AWS/RDS", readMetric, dimensions, clientCreator);
-    requestMetrics.put(readMetric, formatDataMapAvg(readIOPS));
+    metrics.add(Window.STALE_DATA, "AWS/RDS", readMetric, Statistic.AVERAGE, dimensions,
+      readIOPS -> requestMetrics.put(readMetric, CloudWatchMetricsBatch.byTimestamp(readIOPS)));
 
     return requestMetrics;
 
   }
 
-  private void discoverCloudWatchClusterUsageMetrics(RdsClient client, DBCluster resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void discoverCloudWatchClusterUsageMetrics(RdsClient client, DBCluster resource, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
     try {
       Map<String, Object> allMetrics = new HashMap<>();
       if ("aurora-mysql".equalsIgnoreCase(resource.engine())) {
-        Map<String, Object> clusterMetrics = getRDSCloudWatchMetrics(resource.dbClusterIdentifier(), resource.engine(), data, logger, clientCreator);
+        Map<String, Object> clusterMetrics = getRDSCloudWatchMetrics(resource.dbClusterIdentifier(), resource.engine(), metrics);
         allMetrics.put(resource.dbClusterIdentifier() + ":cluster", clusterMetrics);
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("staleDataMetrics", allMetrics));
       } else {
         Filter filter = Filter.builder().name("db-cluster-id").values(resource.dbClusterArn()).build();
         DescribeDbInstancesResponse dbInstances = client.describeDBInstances(DescribeDbInstancesRequest.builder().filters(filter).build());
         for (DBInstance db : dbInstances.dbInstances()) {
-          Map<String, Object> instanceMetrics = getRDSCloudWatchMetrics(db.dbInstanceIdentifier(), db.engine(), data, logger, clientCreator);
+          Map<String, Object> instanceMetrics = getRDSCloudWatchMetrics(db.dbInstanceIdentifier(), db.engine(), metrics);
           allMetrics.put(db.dbInstanceIdentifier() + ":instance", instanceMetrics);
         }
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("staleDataMetrics", allMetrics));
       }
+      metrics.afterResolve(() -> AWSUtils.update(data.supplementaryConfiguration, Map.of("staleDataMetrics", allMetrics)));
     } catch (Exception se) {
       logger.warn("{} RDS cluster is missing stale data metrics, with error {}", resource.dbClusterArn(), se.getMessage());
     }
   }
 
-  private void discoverCloudWatchInstanceUsageMetrics(RdsClient client, DBInstance db, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void discoverCloudWatchInstanceUsageMetrics(DBInstance db, MagpieAwsResource data, Logger logger, CloudWatchMetricsBatch metrics) {
     try {
       Map<String, Object> allMetrics = new HashMap<>();
 
-      Map<String, Object> instanceMetrics = getRDSCloudWatchMetrics(db.dbInstanceIdentifier(), db.engine(), data, logger, clientCreator);
+      Map<String, Object> instanceMetrics = getRDSCloudWatchMetrics(db.dbInstanceIdentifier(), db.engine(), metrics);
       allMetrics.put(db.dbInstanceIdentifier() + ":instance", instanceMetrics);
 
-      AWSUtils.update(data.supplementaryConfiguration, Map.of("staleDataMetrics", allMetrics));
+      metrics.afterResolve(() -> AWSUtils.update(data.supplementaryConfiguration, Map.of("staleDataMetrics", allMetrics)));
 
     } catch (Exception se) {
       logger.warn("{} RDS cluster is missing metrics, with error {}", db.dbInstanceArn(), se.getMessage());
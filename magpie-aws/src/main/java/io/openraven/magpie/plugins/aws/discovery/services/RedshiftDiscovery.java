@@ -66,7 +66,8 @@ public class RedshiftDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = RedshiftCluster.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(RedshiftClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(RedshiftClient.class, RedshiftClient::builder);
       client.describeClustersPaginator().clusters().stream().forEach(cluster -> {
         String arn = String.format("arn:aws:redshift:%s:%s:cluster:%s", region, account, cluster.clusterIdentifier());
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
@@ -59,7 +59,8 @@ public class Route53Discovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final  String RESOURCE_TYPE = Route53HostedZone.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(Route53Client.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(Route53Client.class, Route53Client::builder);
       client.listHostedZonesPaginator().hostedZones().stream().forEach(hostedZone -> {
         String arn = String.format("arn:aws:route53:::hostedZone/%s", hostedZone.id());
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
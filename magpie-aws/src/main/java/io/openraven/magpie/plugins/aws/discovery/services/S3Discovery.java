@@ -26,16 +26,18 @@ import io.openraven.magpie.api.MagpieAwsResource;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.aws.s3.S3Bucket;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.CallMemo;
+import io.openraven.magpie.plugins.aws.discovery.CloudWatchMetricsBatch;
+import io.openraven.magpie.plugins.aws.discovery.CloudWatchMetricsBatch.Window;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
-import org.javatuples.Pair;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.GetBucketAclRequest;
@@ -78,7 +80,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static io.openraven.magpie.plugins.aws.discovery.AWSUtils.getAwsResponse;
@@ -95,6 +104,16 @@ public class S3Discovery implements AWSDiscovery {
     .expireAfterAccess(Duration.ofMinutes(20))
     .build();
 
+  private int bucketConcurrency = 1;
+
+  /**
+   * @param bucketConcurrency The number of buckets to look up and enrich at once.  Each bucket's own calls are still
+   * made in order, since they all update the same resource.
+   */
+  public void setBucketConcurrency(int bucketConcurrency) {
+    this.bucketConcurrency = bucketConcurrency;
+  }
+
   @Override
   public String service() {
     return SERVICE;
@@ -117,37 +136,47 @@ public class S3Discovery implements AWSDiscovery {
         return;
       }
 
-      bucketOpt.get().forEach(bucket -> {
-        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, "arn:aws:s3:::" + bucket.name())
-          .withResourceName(bucket.name())
-          .withResourceId(bucket.name())
-          .withResourceType(RESOURCE_TYPE)
-          .withConfiguration(mapper.valueToTree(bucket.toBuilder()))
-          .withCreatedIso(bucket.creationDate())
-          .withAccountId(account)
-          .withAwsRegion(region.toString())
-          .build();
-
-        discoverEncryption(client, bucket, data);
-        discoverHosting(client, bucket, data);
-        discoverACLS(client, bucket, data);
-        discoverPublicAccess(client, bucket, data);
-        discoverLogging(client, bucket, data);
-        discoverMetrics(client, bucket, data);
-        discoverNotifications(client, bucket, data);
-        discoverBucketPolicy(client, bucket, data, mapper);
-        discoverObjectLockConfiguration(client, bucket, data);
-        discoverReplication(client, bucket, data);
-        discoverPublic(client, bucket, data, logger);
-        discoverIsEncrypted(client, bucket, data, logger);
-        discoverVersioning(client, bucket, data);
-        discoverLifeCycleConfiguration(client, bucket, data);
-        discoverBucketTags(client, bucket, data, mapper);
-        discoverSize(bucket, data, clientCreator, logger);
-        discoverCloudWatchMetricsConfig(client, bucket, data, clientCreator, logger, mapper);
-
-        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":bucket"), data.toJsonNode()));
-      });
+      // Buckets are emitted once the region's size metrics have been fetched together.
+      final var metrics = new CloudWatchMetricsBatch(clientCreator.shared(CloudWatchClient.class, CloudWatchClient::builder));
+      final var enriched = Collections.synchronizedList(new ArrayList<MagpieAwsResource>());
+      try {
+        forEachConcurrently(bucketOpt.get(), bucket -> {
+          var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, "arn:aws:s3:::" + bucket.name())
+            .withResourceName(bucket.name())
+            .withResourceId(bucket.name())
+            .withResourceType(RESOURCE_TYPE)
+            .withConfiguration(mapper.valueToTree(bucket.toBuilder()))
+            .withCreatedIso(bucket.creationDate())
+            .withAccountId(account)
+            .withAwsRegion(region.toString())
+            .build();
+          // Several of the enrichments below read the same bucket configuration.
+          final var memo = new CallMemo();
+
+          discoverEncryption(client, memo, bucket, data);
+          discoverHosting(client, bucket, data);
+          discoverACLS(client, memo, bucket, data);
+          discoverPublicAccess(client, bucket, data);
+          discoverLogging(client, bucket, data);
+          discoverMetrics(client, memo, bucket, data);
+          discoverNotifications(client, bucket, data);
+          discoverBucketPolicy(client, memo, bucket, data, mapper);
+          discoverObjectLockConfiguration(client, bucket, data);
+          discoverReplication(client, bucket, data);
+          discoverPublic(client, memo, bucket, data, logger);
+          discoverIsEncrypted(client, memo, bucket, data, logger);
+          discoverVersioning(client, bucket, data);
+          discoverLifeCycleConfiguration(client, bucket, data);
+          discoverBucketTags(client, bucket, data, mapper);
+          discoverSize(bucket, data, clientCreator, metrics, logger);
+          discoverCloudWatchMetricsConfig(client, memo, bucket, data, clientCreator, logger, mapper);
+
+          enriched.add(data);
+        });
+      } finally {
+        metrics.resolve();
+        enriched.forEach(data -> emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":bucket"), data.toJsonNode())));
+      }
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
@@ -180,8 +209,9 @@ public class S3Discovery implements AWSDiscovery {
       //
       var buckets = bucketCache.get(cacheKey, () -> {
         logger.debug("No cache found for {}, creating one now.", cacheKey);
-        var map = new HashMap<Region, List<Bucket>>();
-        client.listBuckets().buckets().forEach(bucket -> {
+        final var allBuckets = client.listBuckets().buckets();
+        final var regions = new ConcurrentHashMap<String, Region>();
+        forEachConcurrently(allBuckets, bucket -> {
           final var resp = client.getBucketLocation(GetBucketLocationRequest.builder().bucket(bucket.name()).build());
           final var location = resp.locationConstraint();
           // Thanks to https://sdk.amazonaws.com/java/api/latest/software/amazon/awssdk/services/s3/model/GetBucketLocationResponse.html#locationConstraint--
@@ -192,10 +222,10 @@ public class S3Discovery implements AWSDiscovery {
               ? Region.US_EAST_1
               : Region.of(location.toString());
           logger.debug("Associating {} to region {}", bucket.name(), region);
-          var list = map.getOrDefault(region, new LinkedList<>());
-          list.add(bucket);
-          map.put(region, list);
+          regions.put(bucket.name(), region);
         });
+        var map = new HashMap<Region, List<Bucket>>();
+        allBuckets.forEach(bucket -> map.computeIfAbsent(regions.get(bucket.name()), r -> new LinkedList<>()).add(bucket));
         return map;
       });
       return Optional.ofNullable(buckets.get(bucketRegion));
@@ -204,16 +234,62 @@ public class S3Discovery implements AWSDiscovery {
     }
   }
 
-  private void discoverPublic(S3Client client, Bucket resource, MagpieAwsResource data, Logger logger) {
+  /**
+   * Applies the action to every bucket, on up to {@link #bucketConcurrency} threads.  Once all buckets are done the
+   * first failure, if any, is rethrown, so a failing bucket no longer prevents the remaining ones from being handled.
+   * Handled in order on the calling thread when only one bucket is handled at a time, the later failures then being
+   * suppressed by the first.
+   */
+  void forEachConcurrently(List<Bucket> buckets, Consumer<Bucket> action) {
+    if (bucketConcurrency <= 1 || buckets.size() <= 1) {
+      RuntimeException failure = null;
+      for (var bucket : buckets) {
+        try {
+          action.accept(bucket);
+        } catch (RuntimeException ex) {
+          if (failure == null) {
+            failure = ex;
+          } else {
+            failure.addSuppressed(ex);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return;
+    }
+
+    final var threadCount = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(bucketConcurrency, buckets.size()), r -> {
+      final var t = new Thread(r, "aws-s3-bucket-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      CompletableFuture.allOf(buckets.stream()
+        .map(bucket -> CompletableFuture.runAsync(DiscoveryExceptions.propagateFailures(() -> action.accept(bucket)), executor))
+        .toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void discoverPublic(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data, Logger logger) {
     boolean isPublicByACL = false;
     boolean isPublicByPolicy = false;
 
     // wrap into a try/catch so that if there isn't an ACL response we catch it, default to false, and continue
     try {
       GetBucketAclResponse bucketAcl =
-        client.getBucketAcl(GetBucketAclRequest.builder()
+        memo.call(GetBucketAclRequest.builder()
           .bucket(resource.name())
-          .build());
+          .build(), client::getBucketAcl);
 
       isPublicByACL = bucketAcl.grants().stream()
         .anyMatch(grant -> "http://acs.amazonaws.com/groups/global/AllUsers".equalsIgnoreCase(grant.grantee().uri()) ||
@@ -228,9 +304,9 @@ public class S3Discovery implements AWSDiscovery {
     // wrap into a try/catch so that if there isn't a policy status response we catch it, default to false, and continue
     try {
       GetBucketPolicyStatusResponse bucketPolicyStatus =
-        client.getBucketPolicyStatus(GetBucketPolicyStatusRequest.builder()
+        memo.call(GetBucketPolicyStatusRequest.builder()
           .bucket(resource.name())
-          .build());
+          .build(), client::getBucketPolicyStatus);
 
       isPublicByPolicy = Optional.of(bucketPolicyStatus.policyStatus())
         .map(PolicyStatus::isPublic)
@@ -248,30 +324,30 @@ public class S3Discovery implements AWSDiscovery {
         "isPublicByPolicy", isPublicByPolicy));
   }
 
-  private void discoverACLS(S3Client client, Bucket resource, MagpieAwsResource data) {
+  private void discoverACLS(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data) {
     final String keyname = "BucketACLConfiguration";
     getAwsResponse(
-      () -> client.getBucketAcl(GetBucketAclRequest.builder().bucket(resource.name()).build()),
+      () -> memo.call(GetBucketAclRequest.builder().bucket(resource.name()).build(), client::getBucketAcl),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
 
   }
 
-  private void discoverEncryption(S3Client client, Bucket resource, MagpieAwsResource data) {
+  private void discoverEncryption(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data) {
     final String keyname = "ServerSideEncryptionConfiguration";
     getAwsResponse(
-      () -> client.getBucketEncryption(GetBucketEncryptionRequest.builder().bucket(resource.name()).build()).serverSideEncryptionConfiguration(),
+      () -> memo.call(GetBucketEncryptionRequest.builder().bucket(resource.name()).build(), client::getBucketEncryption).serverSideEncryptionConfiguration(),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
   }
 
-  private void discoverIsEncrypted(S3Client client, Bucket resource, MagpieAwsResource data, Logger logger) {
+  private void discoverIsEncrypted(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data, Logger logger) {
     boolean hasEncryptionConfiguration = false;
     boolean hasBucketEncryptionKeyEnabled = false;
     try {
-      GetBucketEncryptionResponse bucketEnc = client.getBucketEncryption(GetBucketEncryptionRequest.builder().bucket(resource.name()).build());
+      GetBucketEncryptionResponse bucketEnc = memo.call(GetBucketEncryptionRequest.builder().bucket(resource.name()).build(), client::getBucketEncryption);
       List<ServerSideEncryptionRule> rules = bucketEnc.serverSideEncryptionConfiguration().rules();
       for (ServerSideEncryptionRule rule : rules) {
         if (rule.bucketKeyEnabled()) {
@@ -331,11 +407,11 @@ public class S3Discovery implements AWSDiscovery {
 
   }
 
-  private void discoverMetrics(S3Client client, Bucket resource, MagpieAwsResource data) {
+  private void discoverMetrics(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data) {
     final String keyname = "MetricsConfiguration";
     final String bucketName = resource.name();
     getAwsResponse(
-      () -> client.listBucketMetricsConfigurations(ListBucketMetricsConfigurationsRequest.builder().bucket(bucketName).build()),
+      () -> memo.call(ListBucketMetricsConfigurationsRequest.builder().bucket(bucketName).build(), client::listBucketMetricsConfigurations),
       (resp) ->
         resp.metricsConfigurationList().forEach(
           config -> {
@@ -370,10 +446,10 @@ public class S3Discovery implements AWSDiscovery {
 
   }
 
-  private void discoverBucketPolicy(S3Client client, Bucket resource, MagpieAwsResource data, ObjectMapper mapper) {
+  private void discoverBucketPolicy(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data, ObjectMapper mapper) {
     final String keyname = "BucketPolicyStatus";
     getAwsResponse(
-      () -> client.getBucketPolicyStatus(GetBucketPolicyStatusRequest.builder().bucket(resource.name()).build()).policyStatus(),
+      () -> memo.call(GetBucketPolicyStatusRequest.builder().bucket(resource.name()).build(), client::getBucketPolicyStatus).policyStatus(),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
@@ -416,9 +492,9 @@ public class S3Discovery implements AWSDiscovery {
     );
   }
 
-  private void discoverCloudWatchMetricsConfig(S3Client client, Bucket resource, MagpieAwsResource data, MagpieAWSClientCreator clientCreator, Logger logger, ObjectMapper mapper) {
+  private void discoverCloudWatchMetricsConfig(S3Client client, CallMemo memo, Bucket resource, MagpieAwsResource data, MagpieAWSClientCreator clientCreator, Logger logger, ObjectMapper mapper) {
     try {
-      ListBucketMetricsConfigurationsResponse bucketMetricsConfiguration = client.listBucketMetricsConfigurations(ListBucketMetricsConfigurationsRequest.builder().bucket(resource.name()).build());
+      ListBucketMetricsConfigurationsResponse bucketMetricsConfiguration = memo.call(ListBucketMetricsConfigurationsRequest.builder().bucket(resource.name()).build(), client::listBucketMetricsConfigurations);
       List<MetricsConfiguration> allMetrics = bucketMetricsConfiguration.metricsConfigurationList();
       for (MetricsConfiguration mc : allMetrics) {
         //If there is no filter on any of the entries then we know the filter provides full bucket coverage.
@@ -440,7 +516,8 @@ public class S3Discovery implements AWSDiscovery {
   }
 
   public static Map<String, Object> getAllAvailableS3Metrics(String regionID, String bucketName, MagpieAWSClientCreator clientCreator, String filterId, Logger logger) {
-    try (CloudWatchClient client = clientCreator.apply(CloudWatchClient.builder()).region(Region.of(regionID)).build()) {
+    try {
+      final var client = clientCreator.shared(CloudWatchClient.class, Region.of(regionID), CloudWatchClient::builder);
       Map<String, Object> requestMetrics = new HashMap<>();
       List<DimensionFilter> dimensions = Collections.singletonList(DimensionFilter.builder().name("BucketName").value(bucketName).build());
       List<Dimension> dimensionList = new ArrayList<>();
@@ -476,49 +553,46 @@ public class S3Discovery implements AWSDiscovery {
     return mapper.valueToTree(requestMetrics);
   }
 
-  private void discoverSize(Bucket resource, MagpieAwsResource data, MagpieAWSClientCreator clientCreator, Logger logger) {
+  private void discoverSize(Bucket resource, MagpieAwsResource data, MagpieAWSClientCreator clientCreator, CloudWatchMetricsBatch metrics, Logger logger) {
     try {
       // get the different bucket size metrics available
       List<String> storageTypeDimensions = AWSUtils.getS3AvailableSizeMetrics(data.awsRegion, data.resourceName, clientCreator);
 
-      List<Map<String, Long>> storageTypeMap = new ArrayList<>();
-
-      // run through all the available metrics and make cloudwatch calls to get bucket size
+      // queue the cloudwatch queries for bucket size of every available metric, then put the results together once fetched
+      Map<String, Long> storageTypeSizes = new HashMap<>();
       for (String storageType : storageTypeDimensions) {
-        List<Dimension> dimensions = new ArrayList<>();
-        dimensions.add(Dimension.builder().name("BucketName").value(resource.name()).build());
-        dimensions.add(Dimension.builder().name("StorageType").value(storageType).build());
-        Pair<Long, GetMetricStatisticsResponse> bucketSizeBytes =
-          AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/S3", "BucketSizeBytes", dimensions, clientCreator);
-
-        // we are leaving it boxed due to the insertion into the Map below
-        final Long bucketSizeMetric = bucketSizeBytes.getValue0();
-        if (bucketSizeMetric != null) {
-          storageTypeMap.add(Map.of(storageType, bucketSizeMetric));
-        }
-      }
-      data.supplementaryConfiguration = AWSUtils.update(data.supplementaryConfiguration, Map.of("storageTypeSizeInBytes", storageTypeMap));
-
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("BucketName").value(resource.name()).build());
-      dimensions.add(Dimension.builder().name("StorageType").value("StandardStorage").build());
-      Pair<Long, GetMetricStatisticsResponse> bucketSizeBytes =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/S3", "BucketSizeBytes", dimensions, clientCreator);
-
-      List<Dimension> dimensions2 = new ArrayList<>();
-      dimensions2.add(Dimension.builder().name("BucketName").value(resource.name()).build());
-      dimensions2.add(Dimension.builder().name("StorageType").value("AllStorageTypes").build());
-      Pair<Long, GetMetricStatisticsResponse> numberOfObjects =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/S3", "NumberOfObjects", dimensions2, clientCreator);
-
-      if (numberOfObjects.getValue0() != null && bucketSizeBytes.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration,
-          Map.of("size",
-            Map.of("BucketSizeBytes", bucketSizeBytes.getValue0(),
-              "NumberOfObjects", numberOfObjects.getValue0())));
-
-        data.sizeInBytes = bucketSizeBytes.getValue0();
+        metrics.add(Window.RECENT, "AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, storageDimensions(resource, storageType),
+          datapoints -> storageTypeSizes.put(storageType, CloudWatchMetricsBatch.maxAsLong(datapoints)));
       }
+
+      Map<String, Long> size = new HashMap<>();
+      metrics.add(Window.RECENT, "AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, storageDimensions(resource, "StandardStorage"),
+        datapoints -> size.put("BucketSizeBytes", CloudWatchMetricsBatch.maxAsLong(datapoints)));
+      metrics.add(Window.RECENT, "AWS/S3", "NumberOfObjects", Statistic.MAXIMUM, storageDimensions(resource, "AllStorageTypes"),
+        datapoints -> size.put("NumberOfObjects", CloudWatchMetricsBatch.maxAsLong(datapoints)));
+
+      metrics.afterResolve(() -> {
+        List<Map<String, Long>> storageTypeMap = new ArrayList<>();
+        for (String storageType : storageTypeDimensions) {
+          // we are leaving it boxed due to the insertion into the Map below
+          final Long bucketSizeMetric = storageTypeSizes.get(storageType);
+          if (bucketSizeMetric != null) {
+            storageTypeMap.add(Map.of(storageType, bucketSizeMetric));
+          }
+        }
+        data.supplementaryConfiguration = AWSUtils.update(data.supplementaryConfiguration, Map.of("storageTypeSizeInBytes", storageTypeMap));
+
+        final Long bucketSizeBytes = size.get("BucketSizeBytes");
+        final Long numberOfObjects = size.get("NumberOfObjects");
+        if (numberOfObjects != null && bucketSizeBytes != null) {
+          AWSUtils.update(data.supplementaryConfiguration,
+            Map.of("size",
+              Map.of("BucketSizeBytes", bucketSizeBytes,
+                "NumberOfObjects", numberOfObjects)));
+
+          data.sizeInBytes = bucketSizeBytes;
+        }
+      });
     } catch (SdkServiceException ex) {
       if (!(ex.statusCode() == 403 || ex.statusCode() == 404)) {
         throw ex;
@@ -527,4 +601,10 @@ public class S3Discovery implements AWSDiscovery {
     }
   }
 
+  private static List<Dimension> storageDimensions(Bucket resource, String storageType) {
+    return List.of(
+      Dimension.builder().name("BucketName").value(resource.name()).build(),
+      Dimension.builder().name("StorageType").value(storageType).build());
+  }
+
 }
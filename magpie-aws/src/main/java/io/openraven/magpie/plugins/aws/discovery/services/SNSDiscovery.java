@@ -52,10 +52,9 @@ public class SNSDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(SnsClient.builder()).build()) {
-      discoverTopics(client, mapper, session, region, emitter);
-      discoverSubscriptions(client, mapper, session, region, emitter);
-    }
+    final var client = clientCreator.shared(SnsClient.class, SnsClient::builder);
+    discoverTopics(client, mapper, session, region, emitter);
+    discoverSubscriptions(client, mapper, session, region, emitter);
   }
 
   private void discoverTopics(SnsClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter) {
@@ -52,7 +52,8 @@ public class SSMDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = SSMInstance.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(SsmClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(SsmClient.class, SsmClient::builder);
       client.describeInstanceInformationPaginator().instanceInformationList().forEach(instance -> {
         String arn = format("arn:aws:ec2:%s:instance/%s", region, instance.instanceId());
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
@@ -59,7 +59,8 @@ public class SecretsManagerDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = SecretsManagerSecret.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(SecretsManagerClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(SecretsManagerClient.class, SecretsManagerClient::builder);
       client.listSecretsPaginator(ListSecretsRequest.builder().build()).stream()
         .forEach(secretsPaginatedResponse -> secretsPaginatedResponse.secretList()
           .stream()
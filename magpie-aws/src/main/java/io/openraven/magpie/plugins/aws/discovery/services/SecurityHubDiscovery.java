@@ -51,7 +51,8 @@ public class SecurityHubDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = SecurityHubStandardSubscription.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(SecurityHubClient.builder()).build()) {
+    try {
+      final var client = clientCreator.shared(SecurityHubClient.class, SecurityHubClient::builder);
       client.getEnabledStandardsPaginator(GetEnabledStandardsRequest.builder().build())
         .forEach(resp -> resp.standardsSubscriptions().forEach(sub -> {
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, sub.standardsSubscriptionArn())
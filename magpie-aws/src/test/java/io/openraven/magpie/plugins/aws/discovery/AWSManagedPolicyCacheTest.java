@@ -0,0 +1,63 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AWSManagedPolicyCacheTest {
+
+  private static final String ARN = "arn:aws:iam::aws:policy/ReadOnlyAccess";
+  private static final String DOCUMENT = "%7B%22Version%22%3A%222012-10-17%22%7D";
+  private static final Instant NOW = Instant.parse("2021-06-01T00:00:00Z");
+
+  @Test
+  void recognizesAwsManagedPolicies() {
+    assertTrue(AWSManagedPolicyCache.isAwsManaged(ARN));
+    assertTrue(AWSManagedPolicyCache.isAwsManaged("arn:aws-cn:iam::aws:policy/ReadOnlyAccess"));
+    assertFalse(AWSManagedPolicyCache.isAwsManaged("arn:aws:iam::123456789012:policy/ReadOnlyAccess"));
+  }
+
+  @Test
+  void entriesAreKeyedByVersionAndParsedOnce() {
+    final var cache = new AWSManagedPolicyCache(null, Duration.ofHours(1), Clock.fixed(NOW, ZoneOffset.UTC));
+    cache.put(ARN, "v2", DOCUMENT);
+
+    assertEquals(Optional.of(DOCUMENT), cache.getDocument(ARN, "v2"));
+    assertEquals(Optional.empty(), cache.getDocument(ARN, "v3"));
+
+    final var mapper = new ObjectMapper();
+    final var parsed = cache.getParsedDocument(mapper, ARN, "v2").orElseThrow();
+    assertEquals("2012-10-17", parsed.get("Version").textValue());
+    assertSame(parsed, cache.getParsedDocument(mapper, ARN, "v2").orElseThrow());
+  }
+
+  @Test
+  void entriesSurviveRunsUntilTheyExpire(@TempDir Path dir) {
+    final var file = dir.resolve("cache").resolve("policies.json");
+    final var ttl = Duration.ofHours(24);
+
+    final var first = new AWSManagedPolicyCache(file, ttl, Clock.fixed(NOW, ZoneOffset.UTC));
+    first.put(ARN, "v2", DOCUMENT);
+    first.save();
+    assertTrue(Files.exists(file));
+
+    final var second = new AWSManagedPolicyCache(file, ttl, Clock.fixed(NOW.plus(Duration.ofHours(23)), ZoneOffset.UTC));
+    assertEquals(Optional.of(DOCUMENT), second.getDocument(ARN, "v2"));
+
+    final var third = new AWSManagedPolicyCache(file, ttl, Clock.fixed(NOW.plus(Duration.ofHours(25)), ZoneOffset.UTC));
+    assertEquals(Optional.empty(), third.getDocument(ARN, "v2"));
+  }
+}
@@ -0,0 +1,78 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.backup.BackupClient;
+import software.amazon.awssdk.services.backup.model.BackupJob;
+import software.amazon.awssdk.services.backup.model.BackupException;
+import software.amazon.awssdk.services.backup.model.ListBackupJobsRequest;
+import software.amazon.awssdk.services.backup.model.ListBackupJobsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BackupJobIndexTest {
+
+  private static final String VOLUME = "arn:aws:ec2:us-east-1:123456789012:volume/vol-1";
+  private static final String DATABASE = "arn:aws:rds:us-east-1:123456789012:db:db-1";
+
+  @Test
+  void jobsAreListedOnceAndKeyedByResource() {
+    final var requests = new ArrayList<ListBackupJobsRequest>();
+    final var index = new BackupJobIndex(new StubClient(request -> {
+      requests.add(request);
+      return request.nextToken() == null
+        ? ListBackupJobsResponse.builder().nextToken("page2").backupJobs(job("1", VOLUME), job("2", DATABASE)).build()
+        : ListBackupJobsResponse.builder().backupJobs(job("3", VOLUME)).build();
+    }));
+
+    assertEquals(List.of("1", "3"), ids(index.get(VOLUME)));
+    assertEquals(List.of("2"), ids(index.get(DATABASE)));
+    assertEquals(List.of(), ids(index.get("arn:aws:ec2:us-east-1:123456789012:volume/vol-2")));
+    assertEquals(2, requests.size());
+    assertNull(requests.get(0).byResourceArn());
+  }
+
+  @Test
+  void failedListingMisses() {
+    final var index = new BackupJobIndex(new StubClient(request -> {
+      throw BackupException.builder().statusCode(403).message("Access denied").build();
+    }));
+    assertEquals(Optional.empty(), index.get(VOLUME));
+  }
+
+  private static BackupJob job(String id, String arn) {
+    return BackupJob.builder().backupJobId(id).resourceArn(arn).build();
+  }
+
+  private static List<String> ids(Optional<List<BackupJob.Builder>> jobs) {
+    return jobs.orElseThrow().stream().map(job -> job.build().backupJobId()).collect(Collectors.toList());
+  }
+
+  private static class StubClient implements BackupClient {
+    private final Function<ListBackupJobsRequest, ListBackupJobsResponse> listBackupJobs;
+
+    StubClient(Function<ListBackupJobsRequest, ListBackupJobsResponse> listBackupJobs) {
+      this.listBackupJobs = listBackupJobs;
+    }
+
+    @Override
+    public ListBackupJobsResponse listBackupJobs(ListBackupJobsRequest request) {
+      return listBackupJobs.apply(request);
+    }
+
+    @Override
+    public String serviceName() {
+      return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
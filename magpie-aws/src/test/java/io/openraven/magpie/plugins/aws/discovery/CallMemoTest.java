@@ -0,0 +1,59 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.s3.model.GetBucketAclRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketAclResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketPolicyRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CallMemoTest {
+
+  @Test
+  void equalRequestsAreCalledOnce() {
+    final var memo = new CallMemo();
+    final var calls = new AtomicInteger();
+    final var response = GetBucketAclResponse.builder().build();
+    final var before = CallMemo.getAvoidedCalls().getOrDefault("GetBucketAcl", 0L);
+
+    final var first = memo.call(GetBucketAclRequest.builder().bucket("a").build(), r -> {
+      calls.incrementAndGet();
+      return response;
+    });
+    final var second = memo.call(GetBucketAclRequest.builder().bucket("a").build(), r -> {
+      calls.incrementAndGet();
+      return GetBucketAclResponse.builder().build();
+    });
+    memo.call(GetBucketAclRequest.builder().bucket("b").build(), r -> {
+      calls.incrementAndGet();
+      return response;
+    });
+
+    assertSame(first, second);
+    assertEquals(2, calls.get());
+    assertEquals(before + 1, CallMemo.getAvoidedCalls().get("GetBucketAcl"));
+  }
+
+  @Test
+  void failuresAreRethrownWithoutCallingAgain() {
+    final var memo = new CallMemo();
+    final var calls = new AtomicInteger();
+    final var request = GetBucketPolicyRequest.builder().bucket("a").build();
+    final var failure = AwsServiceException.builder().statusCode(404).build();
+
+    assertSame(failure, assertThrows(AwsServiceException.class, () -> memo.call(request, r -> {
+      calls.incrementAndGet();
+      throw failure;
+    })));
+    assertSame(failure, assertThrows(AwsServiceException.class, () -> memo.call(request, r -> {
+      calls.incrementAndGet();
+      throw failure;
+    })));
+    assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,118 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudWatchMetricsBatchTest {
+
+  private static final Instant T0 = Instant.parse("2021-01-01T00:00:00Z");
+
+  @Test
+  void queriesAreFetchedInBatchesAndHandedBack() {
+    final var requests = new ArrayList<GetMetricDataRequest>();
+    // Answers every query with a single datapoint whose value is the query's index within its call.
+    final var batch = new CloudWatchMetricsBatch(new StubClient(request -> {
+      requests.add(request);
+      return GetMetricDataResponse.builder()
+        .metricDataResults(request.metricDataQueries().stream()
+          .map(q -> MetricDataResult.builder().id(q.id()).timestamps(T0).values((double) Integer.parseInt(q.id().substring(1))).build())
+          .collect(Collectors.toList()))
+        .build();
+    }));
+
+    final var results = new HashMap<Integer, Long>();
+    final var queries = CloudWatchMetricsBatch.MAX_QUERIES_PER_CALL + 1;
+    for (int i = 0; i < queries; i++) {
+      final var index = i;
+      batch.add(CloudWatchMetricsBatch.Window.RECENT, "AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, dimensions("db-" + i),
+        datapoints -> results.put(index, CloudWatchMetricsBatch.maxAsLong(datapoints)));
+    }
+    // The same query as the first, which shouldn't be fetched again.
+    final var duplicate = new ArrayList<Long>();
+    batch.add(CloudWatchMetricsBatch.Window.RECENT, "AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, dimensions("db-0"),
+      datapoints -> duplicate.add(CloudWatchMetricsBatch.maxAsLong(datapoints)));
+    final var afterResolve = new ArrayList<Integer>();
+    batch.afterResolve(() -> afterResolve.add(results.size()));
+
+    batch.resolve();
+
+    assertEquals(2, requests.size());
+    assertEquals(CloudWatchMetricsBatch.MAX_QUERIES_PER_CALL, requests.get(0).metricDataQueries().size());
+    assertEquals(1, requests.get(1).metricDataQueries().size());
+    assertEquals(queries, results.size());
+    assertEquals(7L, results.get(7));
+    assertEquals(0L, results.get(CloudWatchMetricsBatch.MAX_QUERIES_PER_CALL));
+    assertEquals(List.of(0L), duplicate);
+    assertEquals(List.of(queries), afterResolve);
+  }
+
+  @Test
+  void pagesAreMergedPerQuery() {
+    final var batch = new CloudWatchMetricsBatch(new StubClient(request -> request.nextToken() == null
+      ? GetMetricDataResponse.builder().nextToken("page2")
+        .metricDataResults(MetricDataResult.builder().id("q0").timestamps(T0).values(1.0).build()).build()
+      : GetMetricDataResponse.builder()
+        .metricDataResults(MetricDataResult.builder().id("q0").timestamps(T0.plusSeconds(86400)).values(2.0).build()).build()));
+
+    final var results = new ArrayList<Map<String, Double>>();
+    batch.add(CloudWatchMetricsBatch.Window.STALE_DATA, "AWS/RDS", "DatabaseConnections", Statistic.SUM, dimensions("db"),
+      datapoints -> results.add(CloudWatchMetricsBatch.byTimestamp(datapoints)));
+    batch.resolve();
+
+    assertEquals(1, results.size());
+    assertEquals(Map.of("2021-01-01T00:00:00Z", 1.0, "2021-01-02T00:00:00Z", 2.0), results.get(0));
+  }
+
+  @Test
+  void emptyBatchMakesNoCalls() {
+    final var requests = new ArrayList<GetMetricDataRequest>();
+    final var batch = new CloudWatchMetricsBatch(new StubClient(request -> {
+      requests.add(request);
+      return GetMetricDataResponse.builder().build();
+    }));
+    batch.resolve();
+    assertTrue(requests.isEmpty());
+  }
+
+  private static List<Dimension> dimensions(String identifier) {
+    return List.of(Dimension.builder().name("DBInstanceIdentifier").value(identifier).build());
+  }
+
+  private static class StubClient implements CloudWatchClient {
+    private final Function<GetMetricDataRequest, GetMetricDataResponse> getMetricData;
+
+    StubClient(Function<GetMetricDataRequest, GetMetricDataResponse> getMetricData) {
+      this.getMetricData = getMetricData;
+    }
+
+    @Override
+    public GetMetricDataResponse getMetricData(GetMetricDataRequest request) {
+      return getMetricData.apply(request);
+    }
+
+    @Override
+    public String serviceName() {
+      return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
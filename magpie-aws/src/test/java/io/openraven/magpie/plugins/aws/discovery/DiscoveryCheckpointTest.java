@@ -0,0 +1,36 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiscoveryCheckpointTest {
+
+  @Test
+  void completedUnitsSurviveARestartOfTheSession(@TempDir Path dir) throws IOException {
+    final var first = new DiscoveryCheckpoint(dir, "session-1");
+    first.complete("123456789012", "ec2", "us-east-1");
+    first.complete("123456789012", "s3", "us-east-1");
+    // As left by a process dying mid-write.
+    Files.writeString(dir.resolve("session-1.checkpoint"), "123456789012\trds", StandardOpenOption.APPEND);
+
+    final var resumed = new DiscoveryCheckpoint(dir, "session-1");
+    assertEquals(2, resumed.getCompletedCount());
+    assertTrue(resumed.isCompleted("123456789012", "ec2", "us-east-1"));
+    assertFalse(resumed.isCompleted("123456789012", "ec2", "us-west-2"));
+    resumed.complete("123456789012", "rds", "us-east-1");
+    assertTrue(new DiscoveryCheckpoint(dir, "session-1").isCompleted("123456789012", "rds", "us-east-1"));
+    assertFalse(new DiscoveryCheckpoint(dir, "session-2").isCompleted("123456789012", "ec2", "us-east-1"));
+
+    resumed.delete();
+    assertEquals(0, new DiscoveryCheckpoint(dir, "session-1").getCompletedCount());
+  }
+}
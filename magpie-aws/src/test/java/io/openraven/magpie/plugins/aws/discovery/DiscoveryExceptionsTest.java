@@ -0,0 +1,45 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DiscoveryExceptionsTest {
+
+  @Test
+  void retryableErrorsAreCounted() {
+    assertEquals(2, DiscoveryExceptions.countFailures(() -> {
+      DiscoveryExceptions.onDiscoveryException("AWS::EC2::Instance", "i-1", Region.US_EAST_1, error(500, "InternalError", "Internal failure"));
+      DiscoveryExceptions.onDiscoveryException("AWS::EC2::Instance", "i-2", Region.US_EAST_1, error(400, "Throttling", "Rate exceeded"));
+    }));
+  }
+
+  @Test
+  void errorsARetryWouldMeetAreNotCounted() {
+    assertEquals(0, DiscoveryExceptions.countFailures(() -> {
+      DiscoveryExceptions.onDiscoveryException("AWS::EC2::Instance", "i-1", Region.US_EAST_1, error(403, "AccessDenied", "Access Denied"));
+      DiscoveryExceptions.onDiscoveryException("AWS::EC2::Instance", "i-2", Region.US_EAST_1, error(404, "NotFound", "No such instance"));
+    }));
+  }
+
+  @Test
+  void errorsOnHandedOffTasksCountTowardsTheUnit() {
+    assertEquals(1, DiscoveryExceptions.countFailures(() -> CompletableFuture.runAsync(DiscoveryExceptions.propagateFailures(() ->
+      DiscoveryExceptions.onDiscoveryException("AWS::S3::Bucket", "bucket", Region.US_EAST_1, error(500, "InternalError", "Internal failure")))).join()));
+    // Outside a counted unit errors are only logged.
+    DiscoveryExceptions.onDiscoveryException("AWS::S3::Bucket", "bucket", Region.US_EAST_1, error(500, "InternalError", "Internal failure"));
+  }
+
+  private static AwsServiceException error(int status, String code, String message) {
+    return AwsServiceException.builder()
+      .statusCode(status)
+      .message(message)
+      .awsErrorDetails(AwsErrorDetails.builder().errorCode(code).errorMessage(message).build())
+      .build();
+  }
+}
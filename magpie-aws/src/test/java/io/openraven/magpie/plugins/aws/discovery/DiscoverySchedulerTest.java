@@ -0,0 +1,75 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiscoverySchedulerTest {
+
+  @Test
+  public void testCapsAreRespected() throws Exception {
+    final var running = new AtomicInteger();
+    final var maxRunning = new AtomicInteger();
+    final var runningPerAccount = new ConcurrentHashMap<String, AtomicInteger>();
+    final var maxPerAccount = new AtomicInteger();
+    final var runningIam = new AtomicInteger();
+    final var maxIam = new AtomicInteger();
+    final var completed = new AtomicInteger();
+
+    final var units = new ArrayList<DiscoveryScheduler.WorkUnit>();
+    for (var service : List.of("iam", "ec2", "s3")) {
+      for (var account : List.of("a", "b", "c")) {
+        for (var region : List.of("us-east-1", "us-west-2")) {
+          units.add(new DiscoveryScheduler.WorkUnit(account, service, region, () -> {
+            final var perAccount = runningPerAccount.computeIfAbsent(account, k -> new AtomicInteger());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            maxPerAccount.accumulateAndGet(perAccount.incrementAndGet(), Math::max);
+            if (service.equals("iam")) {
+              maxIam.accumulateAndGet(runningIam.incrementAndGet(), Math::max);
+            }
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            if (service.equals("iam")) {
+              runningIam.decrementAndGet();
+            }
+            perAccount.decrementAndGet();
+            running.decrementAndGet();
+            completed.incrementAndGet();
+          }));
+        }
+      }
+    }
+
+    new DiscoveryScheduler(4, 2, Map.of("iam", 1)).run(units);
+
+    assertEquals(units.size(), completed.get());
+    assertTrue(maxRunning.get() <= 4);
+    assertTrue(maxPerAccount.get() <= 2);
+    assertEquals(1, maxIam.get());
+  }
+
+  @Test
+  public void testFailuresAreIsolated() throws Exception {
+    final var completed = new AtomicInteger();
+    final var units = List.of(
+      new DiscoveryScheduler.WorkUnit("a", "ec2", "us-east-1", () -> {
+        throw new IllegalStateException("boom");
+      }),
+      new DiscoveryScheduler.WorkUnit("a", "s3", "us-east-1", completed::incrementAndGet),
+      new DiscoveryScheduler.WorkUnit("b", "ec2", "us-east-1", completed::incrementAndGet));
+
+    new DiscoveryScheduler(2, 0, Map.of()).run(units);
+
+    assertEquals(2, completed.get());
+  }
+}
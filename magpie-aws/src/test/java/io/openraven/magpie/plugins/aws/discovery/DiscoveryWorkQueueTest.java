@@ -0,0 +1,126 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import io.openraven.magpie.api.Session;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiscoveryWorkQueueTest {
+
+  private static final String TOPIC = "magpie-aws-units";
+  private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+  private final DiscoveryWorkQueue queue = new DiscoveryWorkQueue(Map.of("topic", TOPIC), Duration.ofMillis(200));
+  private final Session coordinatorSession = new Session();
+  private final Session workerSession = new Session();
+  private final Set<String> ran = ConcurrentHashMap.newKeySet();
+  private final Set<String> ranForSessions = ConcurrentHashMap.newKeySet();
+
+  @Test
+  void coordinatorPublishesEveryUnit() {
+    final var producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    queue.publish(producer, coordinatorSession, List.of(unit("ec2", "us-east-1"), unit("s3", "us-west-2")));
+
+    assertEquals(List.of("123456789012\tec2\tus-east-1", "123456789012\ts3\tus-west-2"),
+      producer.history().stream().map(ProducerRecord::value).collect(Collectors.toList()));
+    final var headers = producer.history().get(0).headers();
+    assertEquals(coordinatorSession.getId(), new String(headers.lastHeader(DiscoveryWorkQueue.SESSION_ID_HEADER).value(), StandardCharsets.UTF_8));
+    assertEquals(coordinatorSession.getCreatedAt().toString(),
+      new String(headers.lastHeader(DiscoveryWorkQueue.SESSION_CREATED_AT_HEADER).value(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void workerRunsAssignedUnitsAndCommitsThem() throws InterruptedException {
+    final var units = List.of(unit("ec2", "us-east-1"), unit("s3", "us-west-2"), unit("rds", "eu-west-1"));
+    final var consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+    consumer.schedulePollTask(() -> {
+      consumer.rebalance(List.of(PARTITION));
+      consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+      consumer.addRecord(record(0, units.get(0)));
+      consumer.addRecord(record(1, units.get(2)));
+      consumer.addRecord(withSession(new ConsumerRecord<>(TOPIC, 0, 2, "unknown", "123456789012\tlambda\tus-east-1")));
+      // Published without a session, so there's no session to emit its envelopes for.
+      consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 3, units.get(1).key(), units.get(1).key()));
+    });
+
+    queue.consume(consumer, units, new DiscoveryScheduler(2, 0, Map.of()));
+
+    assertEquals(Set.of("ec2:us-east-1", "rds:eu-west-1"), ran);
+    // Envelopes are emitted for the coordinator's session rather than the worker's own.
+    assertEquals(Set.of(coordinatorSession.getId()), ranForSessions);
+    assertEquals(4L, consumer.committed(Set.of(PARTITION)).get(PARTITION).offset());
+  }
+
+  @Test
+  void workerKeepsPollingWithPartitionsPausedWhileABatchRuns() throws InterruptedException {
+    final var polledWhilePaused = new CountDownLatch(1);
+    final var pausedPartitions = ConcurrentHashMap.<TopicPartition>newKeySet();
+    final var slow = new DiscoveryScheduler.WorkUnit("123456789012", "ec2", "us-east-1", workerSession, session -> {
+      try {
+        polledWhilePaused.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      ran.add("ec2:us-east-1");
+    });
+    final var consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+    consumer.schedulePollTask(() -> {
+      consumer.rebalance(List.of(PARTITION));
+      consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+      consumer.addRecord(record(0, slow));
+    });
+    consumer.schedulePollTask(() -> {
+      pausedPartitions.addAll(consumer.paused());
+      polledWhilePaused.countDown();
+    });
+
+    queue.consume(consumer, List.of(slow), new DiscoveryScheduler(1, 0, Map.of()));
+
+    assertEquals(Set.of(PARTITION), pausedPartitions);
+    assertEquals(Set.of("ec2:us-east-1"), ran);
+    assertTrue(consumer.paused().isEmpty());
+    assertEquals(1L, consumer.committed(Set.of(PARTITION)).get(PARTITION).offset());
+  }
+
+  @Test
+  void roleIsRequired() {
+    assertEquals(DiscoveryWorkQueue.Role.WORKER, DiscoveryWorkQueue.role("Worker"));
+    assertThrows(IllegalArgumentException.class, () -> DiscoveryWorkQueue.role(null));
+  }
+
+  private DiscoveryScheduler.WorkUnit unit(String service, String region) {
+    return new DiscoveryScheduler.WorkUnit("123456789012", service, region, workerSession, session -> {
+      ran.add(service + ":" + region);
+      ranForSessions.add(session.getId());
+    });
+  }
+
+  private ConsumerRecord<String, String> record(long offset, DiscoveryScheduler.WorkUnit unit) {
+    return withSession(new ConsumerRecord<>(TOPIC, 0, offset, unit.key(), unit.key()));
+  }
+
+  private ConsumerRecord<String, String> withSession(ConsumerRecord<String, String> record) {
+    record.headers()
+      .add(DiscoveryWorkQueue.SESSION_ID_HEADER, coordinatorSession.getId().getBytes(StandardCharsets.UTF_8))
+      .add(DiscoveryWorkQueue.SESSION_CREATED_AT_HEADER, coordinatorSession.getCreatedAt().toString().getBytes(StandardCharsets.UTF_8));
+    return record;
+  }
+}
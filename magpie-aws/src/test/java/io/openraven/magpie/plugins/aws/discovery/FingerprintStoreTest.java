@@ -0,0 +1,96 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintStoreTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  void onlyNewAndChangedResourcesAreChanged(@TempDir Path dir) {
+    final var file = dir.resolve("fingerprints.bin");
+
+    final var first = new FingerprintStore(file);
+    assertTrue(first.isChanged(resource("a", "t2.micro", "session-1")));
+    assertTrue(first.isChanged(resource("b", "t2.micro", "session-1")));
+    first.save();
+
+    final var second = new FingerprintStore(file);
+    // Session and timestamps aren't part of the fingerprint.
+    assertFalse(second.isChanged(resource("a", "t2.micro", "session-2")));
+    assertTrue(second.isChanged(resource("b", "m5.large", "session-2")));
+    assertTrue(second.isChanged(resource("c", "t2.micro", "session-2")));
+    second.save();
+
+    // Resources missing from a scan are forgotten, so they are emitted in full when they come back.
+    final var third = new FingerprintStore(file);
+    assertFalse(third.isChanged(resource("b", "m5.large", "session-3")));
+    third.save();
+    assertTrue(new FingerprintStore(file).isChanged(resource("a", "t2.micro", "session-4")));
+  }
+
+  @Test
+  void everyFieldButTheScansOwnIsHashed() {
+    final var base = FingerprintStore.fingerprint(resource("a", "t2.micro", "session-1"));
+    assertEquals(base, FingerprintStore.fingerprint((ObjectNode) resource("a", "t2.micro", "session-2")
+      .set("discoveryMeta", mapper.createObjectNode().put("scan", 2))));
+    assertNotEquals(base, FingerprintStore.fingerprint(resource("a", "t2.micro", "session-1").put("sizeInBytes", 1024)));
+    assertNotEquals(base, FingerprintStore.fingerprint(resource("a", "t2.micro", "session-1").put("resourceName", "renamed")));
+  }
+
+  @Test
+  void resourcesReportedStaleAreChanged(@TempDir Path dir) throws IOException {
+    final var file = dir.resolve("fingerprints.bin");
+    final var first = new FingerprintStore(file);
+    first.isChanged(resource("a", "t2.micro", "session-1"));
+    first.isChanged(resource("b", "t2.micro", "session-1"));
+    first.save();
+
+    // A terminal was handed a marker for "a" but doesn't hold it.
+    Files.write(first.getStaleFile(), List.of("a"));
+    final var second = new FingerprintStore(file);
+    assertFalse(Files.exists(second.getStaleFile()));
+    // Reported during this scan, so left for the next one.
+    Files.write(second.getStaleFile(), List.of("b"));
+    assertTrue(second.isChanged(resource("a", "t2.micro", "session-2")));
+    assertFalse(second.isChanged(resource("b", "t2.micro", "session-2")));
+    second.save();
+
+    final var third = new FingerprintStore(file);
+    assertFalse(third.isChanged(resource("a", "t2.micro", "session-3")));
+    assertTrue(third.isChanged(resource("b", "t2.micro", "session-3")));
+  }
+
+  @Test
+  void markersLeaveOutContent() {
+    final var marker = FingerprintStore.toMarker(resource("a", "t2.micro", "session-1"));
+    assertEquals("a", marker.get("documentId").textValue());
+    assertEquals("session-1", marker.get("discoverySessionId").textValue());
+    assertFalse(marker.has("configuration"));
+    assertFalse(marker.has("tags"));
+  }
+
+  private ObjectNode resource(String documentId, String instanceType, String sessionId) {
+    final var node = mapper.createObjectNode();
+    node.put("documentId", documentId);
+    node.put("discoverySessionId", sessionId);
+    node.put("updatedIso", sessionId);
+    node.set("configuration", mapper.createObjectNode().put("instanceType", instanceType));
+    node.set("supplementaryConfiguration", mapper.createObjectNode());
+    node.set("tags", mapper.createObjectNode().put("env", "prod"));
+    return node;
+  }
+}
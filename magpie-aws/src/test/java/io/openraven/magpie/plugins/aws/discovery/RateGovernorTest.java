@@ -0,0 +1,42 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateGovernorTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void tokensAreSpacedByTheRate() {
+    final var bucket = new RateGovernor.Bucket(10);
+    assertEquals(0, bucket.reserve(0));
+    assertEquals(SECOND / 10, bucket.reserve(0));
+    assertEquals(2 * SECOND / 10, bucket.reserve(0));
+    // Idle time earns tokens back, up to a second's worth.
+    assertEquals(0, bucket.reserve(10 * SECOND));
+  }
+
+  @Test
+  void throttlesHalveTheRateOncePerSecondAndSuccessesRestoreIt() {
+    final var bucket = new RateGovernor.Bucket(8);
+    bucket.onThrottle(0);
+    bucket.onThrottle(SECOND / 2);
+    assertEquals(4, bucket.getRate());
+    bucket.onThrottle(SECOND);
+    assertEquals(2, bucket.getRate());
+
+    for (int i = 0; i < 1000; i++) {
+      bucket.onSuccess();
+    }
+    assertEquals(8, bucket.getRate());
+
+    for (int i = 0; i < 10; i++) {
+      bucket.onThrottle(i * SECOND + 2 * SECOND);
+    }
+    assertEquals(RateGovernor.MIN_RATE, bucket.getRate());
+  }
+}
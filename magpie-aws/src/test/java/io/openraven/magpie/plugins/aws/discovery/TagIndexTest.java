@@ -0,0 +1,74 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.ResourceGroupsTaggingApiClient;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.GetResourcesRequest;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.GetResourcesResponse;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.ResourceGroupsTaggingApiException;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.ResourceTagMapping;
+import software.amazon.awssdk.services.resourcegroupstaggingapi.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TagIndexTest {
+
+  private static final String TABLE = "arn:aws:dynamodb:us-east-1:123456789012:table/orders";
+  private static final String KEY = "arn:aws:kms:us-east-1:123456789012:key/1234abcd";
+
+  @Test
+  void resourcesAreListedOnceAndKeyedByArn() {
+    final var requests = new ArrayList<GetResourcesRequest>();
+    final var index = new TagIndex(new StubClient(request -> {
+      requests.add(request);
+      return request.paginationToken() == null
+        ? GetResourcesResponse.builder().paginationToken("page2").resourceTagMappingList(mapping(TABLE, "team", "billing")).build()
+        : GetResourcesResponse.builder().resourceTagMappingList(mapping(KEY, "env", "prod")).build();
+    }));
+
+    assertEquals(Optional.of(Map.of("team", "billing")), index.get(TABLE));
+    assertEquals(Optional.of(Map.of("env", "prod")), index.get(KEY));
+    assertEquals(Optional.empty(), index.get("arn:aws:dynamodb:us-east-1:123456789012:table/untagged"));
+    assertEquals(2, requests.size());
+    assertNull(requests.get(0).paginationToken());
+  }
+
+  @Test
+  void failedListingMisses() {
+    final var index = new TagIndex(new StubClient(request -> {
+      throw ResourceGroupsTaggingApiException.builder().statusCode(403).message("Access denied").build();
+    }));
+    assertEquals(Optional.empty(), index.get(TABLE));
+  }
+
+  private static ResourceTagMapping mapping(String arn, String key, String value) {
+    return ResourceTagMapping.builder().resourceARN(arn).tags(Tag.builder().key(key).value(value).build()).build();
+  }
+
+  private static class StubClient implements ResourceGroupsTaggingApiClient {
+    private final Function<GetResourcesRequest, GetResourcesResponse> getResources;
+
+    StubClient(Function<GetResourcesRequest, GetResourcesResponse> getResources) {
+      this.getResources = getResources;
+    }
+
+    @Override
+    public GetResourcesResponse getResources(GetResourcesRequest request) {
+      return getResources.apply(request);
+    }
+
+    @Override
+    public String serviceName() {
+      return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -16,10 +16,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
-import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
 import software.amazon.awssdk.regions.Region;
 
-import java.net.URI;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -54,16 +52,7 @@ public class EC2DiscoveryIT extends BaseAWSServiceIT {
   }
 
   public static MagpieAWSClientCreator localClientCreator(final Region region) {
-    return new MagpieAWSClientCreator() {
-      @Override
-      public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT, ClientT> builder) {
-        final var magpieAwsEndpoint = System.getProperty("MAGPIE_AWS_ENDPOINT");
-        if (magpieAwsEndpoint != null) {
-          builder.endpointOverride(URI.create(magpieAwsEndpoint));
-        }
-        return builder.region(region);
-      }
-    };
+    return ClientCreators.localClientCreator(region);
   }
 
   @Test
@@ -0,0 +1,44 @@
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.services.s3.model.Bucket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3DiscoveryTest {
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 4})
+  void failingBucketsDontStopTheRest(int bucketConcurrency) {
+    final var discovery = new S3Discovery();
+    discovery.setBucketConcurrency(bucketConcurrency);
+    final var buckets = IntStream.range(0, 6)
+      .mapToObj(i -> Bucket.builder().name("bucket-" + i).build())
+      .collect(Collectors.toList());
+    final Set<String> handled = ConcurrentHashMap.newKeySet();
+
+    final var failure = assertThrows(IllegalStateException.class, () -> discovery.forEachConcurrently(buckets, bucket -> {
+      handled.add(bucket.name());
+      if (bucket.name().equals("bucket-1") || bucket.name().equals("bucket-4")) {
+        throw new IllegalStateException(bucket.name());
+      }
+    }));
+
+    assertEquals(6, handled.size());
+    assertTrue(Set.of("bucket-1", "bucket-4").contains(failure.getMessage()));
+    if (bucketConcurrency == 1) {
+      // In order, so the first failure is rethrown with the others suppressed.
+      assertEquals("bucket-1", failure.getMessage());
+      assertEquals(1, failure.getSuppressed().length);
+      assertEquals("bucket-4", failure.getSuppressed()[0].getMessage());
+    }
+  }
+}
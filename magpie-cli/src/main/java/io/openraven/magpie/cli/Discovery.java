@@ -52,6 +52,7 @@ public class Discovery {
 
     final var options = new Options();
     options.addOption(new Option("f", "configfile", true, "Config file location (defaults to " + DEFAULT_CONFIG_FILE + ")"));
+    options.addOption(new Option("r", "resume", true, "Resume an interrupted discovery session, skipping the units it completed (requires checkpointDir)"));
 
     final var parser = new DefaultParser();
     final var cmd = parser.parse( options, args);
@@ -66,7 +67,14 @@ public class Discovery {
     try(var is = new FileInputStream((configFile))) {
       final var config = ConfigUtils.merge(MAPPER.readValue(is, MagpieConfig.class), System.getenv());
       LOGGER.info("OSS Discovery. Classpath={}", System.getProperties().get("java.class.path"));
-      new Orchestrator(config, new Session()).scan();
+      final var session = new Session();
+      final var resumed = cmd.getOptionValue("r");
+      if (resumed != null) {
+        // Reusing the id keeps the assets of both runs in the one session.
+        session.setId(resumed);
+        LOGGER.info("Resuming session {}", resumed);
+      }
+      new Orchestrator(config, session).scan();
     }
     LOGGER.info("Discovery completed in {}", humanReadableFormat(Duration.between(start, Instant.now())));
   }
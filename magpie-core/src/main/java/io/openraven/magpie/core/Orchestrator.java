@@ -26,16 +26,21 @@ import io.openraven.magpie.core.fifos.FifoManager;
 import io.openraven.magpie.core.layers.Layer;
 import io.openraven.magpie.core.layers.LayerManager;
 import io.openraven.magpie.core.layers.LayerType;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import io.openraven.magpie.core.metrics.MetricsReporter;
 import io.openraven.magpie.core.plugins.PluginManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Orchestrator {
 
@@ -45,37 +50,44 @@ public class Orchestrator {
   private class LayerCallable implements Callable<LayerType> {
 
     private final Layer layer;
+    // Workers of this callable's layer that haven't returned yet
+    private final AtomicInteger running;
     private volatile boolean repeat;
 
-    public LayerCallable(Layer layer, Boolean repeat) {
+    public LayerCallable(Layer layer, Boolean repeat, AtomicInteger running) {
       this.layer = layer;
       this.repeat = repeat;
+      this.running = running;
     }
 
     @Override
     public LayerType call() throws Exception {
-      do {
-        try {
-          layer.exec();
-          Thread.sleep(100L);
-        } catch (InterruptedException ex) {
-          LOGGER.warn("Layer exec wait interrupted for {}", layer.getName(), ex);
-        } catch (Exception ex) {
-          LOGGER.warn("Layer exception", ex);
+      // Non-origin layers block inside exec() while their dequeue is empty, so there is no need to pause between
+      // iterations.  This lets a layer drain as fast as its plugins allow and only idle when there's no work.
+      try {
+        do {
+          try {
+            layer.exec();
+          } catch (Exception ex) {
+            LOGGER.warn("Layer exception", ex);
+          }
+        } while (repeat && !layer.isComplete());
+      } finally {
+        // The last worker out shuts the layer down, flushing its plugins and passing end-of-stream downstream.
+        if (running.decrementAndGet() == 0) {
+          LOGGER.debug("Shutting down layer {}", layer.getName());
+          layer.shutdown();
         }
-      } while (repeat);
+      }
 
       return layer.getType();
     }
 
-    public void shutdown() {
-      layer.shutdown();
+    public void stop() {
       repeat = false;
     }
   }
 
-  // Allow layers to finish processing
-  private static final long LAYER_GRACE_PERIOD = 3000L;
   private static final Logger LOGGER = LoggerFactory.getLogger(Orchestrator.class);
   private final MagpieConfig config;
   private final Session session;
@@ -86,70 +98,79 @@ public class Orchestrator {
   }
 
   public void scan() {
-    final var fifoManager = new FifoManager(config);
+    final var metrics = new MetricsRegistry();
+    final var reporter = new MetricsReporter(metrics, config.getMetrics());
+    final var fifoManager = new FifoManager(config, metrics);
 
     final var pluginManager = new PluginManager(config);
     pluginManager.loadPlugins(DISCOVERY_PLUGIN_CLASSES);
 
-    final var layerManager = new LayerManager(session, config, fifoManager, pluginManager);
+    final var layerManager = new LayerManager(session, config, fifoManager, pluginManager, metrics);
 
     final var layers = layerManager.getLayers();
-    final var executors = Executors.newFixedThreadPool(layers.size(), r -> {
+    final var workerCount = layers.entrySet().stream()
+      .mapToInt(e -> e.getValue().getType() == LayerType.ORIGIN ? 1 : config.getLayers().get(e.getKey()).getConcurrency())
+      .sum();
+    final var executors = Executors.newFixedThreadPool(workerCount, r -> {
       Thread t = Executors.defaultThreadFactory().newThread(r);
       t.setDaemon(true);
       return t;
     });
 
-    final var originLayers = layers.values().stream().filter(l -> l.getType() == LayerType.ORIGIN).collect(Collectors.toSet());
-    final var otherLayers = layers.values().stream().filter(l -> !originLayers.contains(l)).collect(Collectors.toSet());
-
-    var callables = new ArrayList<LayerCallable>();
-
-    final var originFutures = originLayers.stream()
-      .map(layer -> {
-        var c = new LayerCallable(layer, false);
+    final var callables = new ArrayList<LayerCallable>();
+    final var boundedFutures = new ArrayList<Future<LayerType>>();
+    final var unboundedFutures = new ArrayList<Future<LayerType>>();
+    final var started = Instant.now();
+
+    layers.forEach((name, layer) -> {
+      // Origin layers run exec() once.  Each intermediate/terminal layer runs `concurrency` workers, all draining the
+      // same dequeue.
+      final var isOrigin = layer.getType() == LayerType.ORIGIN;
+      final var workers = isOrigin ? 1 : config.getLayers().get(name).getConcurrency();
+      final var running = new AtomicInteger(workers);
+      final var futures = layerManager.isBounded(name) ? boundedFutures : unboundedFutures;
+      for (int i = 0; i < workers; i++) {
+        var c = new LayerCallable(layer, !isOrigin, running);
         callables.add(c);
-        LOGGER.trace("Submitting callable {}", c.layer.getName());
-        return executors.submit(c);
-      })
-      .collect(Collectors.toList());
-
-    final var otherFutures = otherLayers.stream()
-      .map(layer -> {
-        var c = new LayerCallable(layer, true);
-        callables.add(c);
-        LOGGER.trace("Submitting callable {}", c.layer.getName());
-        return executors.submit(c);
-      })
-      .collect(Collectors.toList());
-
-    // Run indefinitely if no origin layers exist.  If one or more exist then wait for them all to complete.  In a
-    // distributed setup the intermediate/terminal layers will always run as long-running streaming service, while
-    // origin (discovery) layers may come and go.
+        LOGGER.trace("Submitting callable {}", name);
+        futures.add(executors.submit(c));
+      }
+    });
+
+    // If one or more origin layers exist, wait for them and every layer downstream of them to complete.  Origin layers
+    // signal end-of-stream once discovery finishes, and each downstream layer completes after draining everything
+    // its upstream layers produced, so the scan ends as soon as the last envelope has been handled.
     //
-    // Intermediate and terminal layers never return unless there's an error, so we can wait on these with get() just
-    // as we would for the possibly finite origin layer.
-    var futures = originFutures.isEmpty() ? otherFutures : originFutures;
+    // Run indefinitely if no origin layers exist.  In a distributed setup the intermediate/terminal layers will always
+    // run as long-running streaming service, while origin (discovery) layers may come and go.  These layers never
+    // return unless there's an error, so we can wait on them with get() just as we would for the finite layers.
+    awaitAll(boundedFutures.isEmpty() ? unboundedFutures : boundedFutures);
+
+    LOGGER.debug(("Stopping remaining layers"));
+    callables.forEach(LayerCallable::stop);
+    awaitAll(unboundedFutures);
+
+    layers.values().forEach(layer -> logThroughput(layer, started));
+    fifoManager.close();
+    reporter.close();
+  }
+
+  private void awaitAll(List<Future<LayerType>> futures) {
     futures.forEach(f -> {
       try {
-        f.get();
         LOGGER.trace("Got {}", f.get());
       } catch (ExecutionException | InterruptedException ex) {
         LOGGER.error("Layer execution error", ex);
         System.exit(1);
       }
     });
+  }
 
-    try {
-      LOGGER.debug("Entering grace period");
-      Thread.sleep(LAYER_GRACE_PERIOD);
-      LOGGER.debug("Exited grade period");
-    } catch (InterruptedException ex) {
-      LOGGER.error("Grace period interrupted", ex);
-    }
-
-    LOGGER.debug(("Shutting down layers"));
-    // Shut down all layers
-    callables.forEach(LayerCallable::shutdown);
+  private void logThroughput(Layer layer, Instant started) {
+    final var elapsed = Duration.between(started, Instant.now());
+    final var count = layer.getProcessedCount();
+    final var seconds = Math.max(elapsed.toMillis(), 1L) / 1000.0;
+    LOGGER.info("Layer {} processed {} envelopes in {}ms ({} envelopes/s)",
+      layer.getName(), count, elapsed.toMillis(), String.format("%.1f", count / seconds));
   }
 }
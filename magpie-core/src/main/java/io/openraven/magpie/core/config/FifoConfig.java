@@ -22,8 +22,12 @@ import java.util.Map;
 
 public class FifoConfig {
 
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
   private boolean enabled = true;
   private String type = "local";
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private String codec = "json";
   private Map<String, Object> properties = new HashMap<>();
 
 
@@ -43,6 +47,30 @@ public class FifoConfig {
     this.type = type;
   }
 
+  /**
+   * @return The maximum number of envelopes a consuming layer takes from this fifo at a time.  For Kafka fifos this
+   * also sets the consumer's {@code max.poll.records} unless that is given explicitly in the properties.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return The envelope codec used by broker-backed fifos: {@code json} (the default), {@code smile}, {@code cbor} or
+   * the class name of a custom {@link io.openraven.magpie.core.fifos.EnvelopeCodec}.
+   */
+  public String getCodec() {
+    return codec;
+  }
+
+  public void setCodec(String codec) {
+    this.codec = codec;
+  }
+
   public Map<String, Object> getProperties() {
     return properties;
   }
@@ -25,6 +25,8 @@ public class LayerConfig {
 
   private String queue;
   private String dequeue;
+  private int concurrency = 1;
+  private String sessionMetadata = "inline";
 
   private List<String> plugins = new ArrayList<>();
 
@@ -52,6 +54,30 @@ public class LayerConfig {
     this.dequeue = dequeue;
   }
 
+  /**
+   * @return The number of workers draining this layer's dequeue in parallel.  Only applies to intermediate and terminal
+   * layers.
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * @return How envelopes reference the discovery session, either "inline" or "reference".  Only applies to origin
+   * layers.
+   */
+  public String getSessionMetadata() {
+    return sessionMetadata;
+  }
+
+  public void setSessionMetadata(String sessionMetadata) {
+    this.sessionMetadata = sessionMetadata;
+  }
+
   public String getType() {
     return type;
   }
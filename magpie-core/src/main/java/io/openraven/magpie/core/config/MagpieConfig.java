@@ -26,6 +26,7 @@ public class MagpieConfig {
   private Map<String, PluginConfig> plugins = new HashMap<>();
   private Map<String, ServiceConfig> services = new HashMap<>();
   private PolicyConfig policies = new PolicyConfig();
+  private MetricsConfig metrics = new MetricsConfig();
 
   public Map<String, FifoConfig> getFifos() {
     return fifos;
@@ -59,6 +60,14 @@ public class MagpieConfig {
     this.policies =  policies != null ? this.policies = policies : new PolicyConfig();
   }
 
+  public MetricsConfig getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(MetricsConfig metrics) {
+    this.metrics = metrics != null ? metrics : new MetricsConfig();
+  }
+
   public Map<String, ServiceConfig> getServices() {
     return services;
   }
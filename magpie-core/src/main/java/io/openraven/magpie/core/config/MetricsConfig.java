@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.config;
+
+public class MetricsConfig {
+
+  private boolean jmx = true;
+  private Integer prometheusPort;
+  private long logIntervalSeconds = 0;
+
+  /**
+   * @return Whether pipeline metrics are registered as a JMX MBean ({@code io.openraven.magpie:type=Metrics}).
+   */
+  public boolean isJmx() {
+    return jmx;
+  }
+
+  public void setJmx(boolean jmx) {
+    this.jmx = jmx;
+  }
+
+  /**
+   * @return The port on which to serve metrics in Prometheus text format under {@code /metrics}, or null (the default)
+   * to disable the endpoint.
+   */
+  public Integer getPrometheusPort() {
+    return prometheusPort;
+  }
+
+  public void setPrometheusPort(Integer prometheusPort) {
+    this.prometheusPort = prometheusPort;
+  }
+
+  /**
+   * @return How often to log a dump of all metrics, in seconds.  Zero (the default) disables periodic logging.
+   */
+  public long getLogIntervalSeconds() {
+    return logIntervalSeconds;
+  }
+
+  public void setLogIntervalSeconds(long logIntervalSeconds) {
+    this.logIntervalSeconds = logIntervalSeconds;
+  }
+}
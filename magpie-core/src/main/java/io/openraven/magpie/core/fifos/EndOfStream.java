@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-of-stream markers are ordinary envelopes, identified by a metadata entry naming the layer that produced them.
+ * A layer writes a marker to its queue once it will emit nothing further, which lets downstream layers know when
+ * they have drained everything it produced.  Markers are consumed by the layers and never reach plugins.
+ */
+public final class EndOfStream {
+
+  public static final String METADATA_KEY = "magpie.endOfStream";
+
+  private EndOfStream() {
+  }
+
+  /**
+   * @param layerName The name of the layer that has finished emitting.
+   * @return A marker envelope signalling that {@code layerName} has finished.
+   */
+  public static MagpieEnvelope marker(String layerName) {
+    final var env = new MagpieEnvelope(null, List.of(), JsonNodeFactory.instance.objectNode());
+    env.setMetadata(Map.of(METADATA_KEY, layerName));
+    return env;
+  }
+
+  public static boolean isMarker(MagpieEnvelope env) {
+    return env.getMetadata() != null && env.getMetadata().containsKey(METADATA_KEY);
+  }
+
+  /**
+   * @return The name of the layer that produced the marker, or null if {@code env} isn't a marker.
+   */
+  public static String producer(MagpieEnvelope env) {
+    return env.getMetadata() == null ? null : env.getMetadata().get(METADATA_KEY);
+  }
+}
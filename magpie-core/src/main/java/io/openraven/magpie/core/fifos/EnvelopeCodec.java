@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.config.ConfigException;
+
+/**
+ * Converts envelopes to and from the bytes carried by a broker-backed FIFO.  The codec is selected per fifo via the
+ * {@code codec} setting; producers and consumers of the same topic must use the same codec.
+ */
+public interface EnvelopeCodec {
+
+  byte[] encode(MagpieEnvelope env) throws FifoException;
+
+  MagpieEnvelope decode(byte[] bytes) throws FifoException;
+
+  /**
+   * Resolve a codec by name.  The built-in codecs are {@code json}, {@code smile} and {@code cbor}; any other value is
+   * treated as the fully qualified name of an {@link EnvelopeCodec} implementation with a public no-arg constructor.
+   * @param name The configured codec name.
+   * @return The codec instance.
+   */
+  static EnvelopeCodec forName(String name) {
+    switch (name.toLowerCase()) {
+      case "json":
+        return JacksonEnvelopeCodec.JSON;
+      case "smile":
+        return JacksonEnvelopeCodec.SMILE;
+      case "cbor":
+        return JacksonEnvelopeCodec.CBOR;
+      default:
+        try {
+          return (EnvelopeCodec) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+          throw new ConfigException("Invalid envelope codec: " + name, ex);
+        }
+    }
+  }
+}
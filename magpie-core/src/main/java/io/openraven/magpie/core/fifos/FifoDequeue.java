@@ -17,9 +17,71 @@ package io.openraven.magpie.core.fifos;
 
 import io.openraven.magpie.api.MagpieEnvelope;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @FunctionalInterface
 public interface FifoDequeue {
   Optional<MagpieEnvelope> poll() throws FifoException;
+
+  /**
+   * Retrieve the next envelope, blocking for up to {@code wait} if none is immediately available. Implementations
+   * should return as soon as an envelope arrives so that consuming layers drain continuously and only idle when the
+   * FIFO is empty.  The default implementation falls back to {@link #poll()} followed by a sleep when empty.
+   * @param wait The maximum amount of time to block waiting for an envelope.
+   * @return The next envelope, or empty if none arrived within {@code wait}.
+   */
+  default Optional<MagpieEnvelope> poll(Duration wait) throws FifoException {
+    final var env = poll();
+    if (env.isEmpty()) {
+      try {
+        Thread.sleep(wait.toMillis());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new FifoException("Interrupted while waiting on dequeue", ex);
+      }
+    }
+    return env;
+  }
+
+  /**
+   * Retrieve up to {@code max} envelopes in a single call, blocking for up to {@code wait} only if none are
+   * immediately available.  Implementations backed by a remote broker should fetch the whole batch in one round trip.
+   * @param max The maximum number of envelopes to return.
+   * @param wait The maximum amount of time to block waiting for the first envelope.
+   * @return The envelopes retrieved, in FIFO order.  Empty if none arrived within {@code wait}.
+   */
+  default List<MagpieEnvelope> pollBatch(int max, Duration wait) throws FifoException {
+    final var batch = new ArrayList<MagpieEnvelope>();
+    var next = poll(wait);
+    while (next.isPresent()) {
+      batch.add(next.get());
+      if (batch.size() >= max) {
+        break;
+      }
+      next = poll();
+    }
+    return batch;
+  }
+
+  /**
+   * Signals that the envelopes of a batch have been processed.  Durable implementations only move their persisted read
+   * position past a batch once it and every batch polled before it have been acknowledged, so that envelopes still in
+   * flight when the process dies are delivered again on restart.  The default implementation does nothing.
+   * @param batch A batch exactly as returned by {@link #pollBatch}, or a single envelope returned by {@link #poll}.
+   */
+  default void acknowledge(List<MagpieEnvelope> batch) throws FifoException {
+  }
+
+  /**
+   * Tells the dequeue which layers of this process write to it.  Implementations that pass on end-of-stream markers
+   * only once they are complete, such as those reassembling markers written to several partitions, track just these
+   * layers' markers and may drop the rest.  The default implementation does nothing.
+   * @param upstreams The names of the layers writing to this dequeue, possibly none.
+   */
+  default void setUpstreams(Collection<String> upstreams) {
+  }
 }
@@ -19,14 +19,18 @@ package io.openraven.magpie.core.fifos;
 import io.openraven.magpie.core.config.ConfigException;
 import io.openraven.magpie.core.config.LayerConfig;
 import io.openraven.magpie.core.config.MagpieConfig;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FifoManager {
 
@@ -35,9 +39,15 @@ public class FifoManager {
   private final Map<String, FifoQueue> queues = new HashMap<>();
   private final Map<String, FifoDequeue> dequeues = new HashMap<>();
   private final MagpieConfig config;
+  private final MetricsRegistry metrics;
 
   public FifoManager(MagpieConfig config) {
+    this(config, new MetricsRegistry());
+  }
+
+  public FifoManager(MagpieConfig config, MetricsRegistry metrics) {
     this.config = config;
+    this.metrics = metrics;
     List<String> buildQueues = config.getLayers().values().stream()
       .map(LayerConfig::getQueue)
       .filter(Objects::nonNull)
@@ -50,6 +60,7 @@ public class FifoManager {
 
     buildQueues(buildQueues);
     buildDequeues(buildDequeues);
+    registerGauges();
   }
 
   private void buildQueues (List<String> buildQueues) {
@@ -65,18 +76,24 @@ public class FifoManager {
       final var queueType = QueueType.valueOf(fifoConfig.getType().toUpperCase());
       switch(queueType) {
         case LOCAL:
-          var q = new LocalQueue();
+          var q = new LocalQueue(fifoConfig.getProperties());
           // A LocalQueue implements both Queue and Dequeue, so it must be placed in both
           // collections.
           queues.put(name, q);
           dequeues.put(name, q);
           break;
         case KAFKA:
-          var qk = new KafkaQueue(fifoConfig.getProperties());
+          var qk = new KafkaQueue(fifoConfig.getProperties(), EnvelopeCodec.forName(fifoConfig.getCodec()));
           // A LocalQueue implements both Queue and Dequeue, so it must be placed in both
           // collections.
           queues.put(name, qk);
           break;
+        case MAPPED:
+          var qm = new MappedQueue(fifoConfig.getProperties(), EnvelopeCodec.forName(fifoConfig.getCodec()));
+          // Like a LocalQueue, a MappedQueue implements both Queue and Dequeue.
+          queues.put(name, qm);
+          dequeues.put(name, qm);
+          break;
         default:
           throw new ConfigException("Invalid queue type: " + queueType);
       }
@@ -99,8 +116,13 @@ public class FifoManager {
           case LOCAL:
             // Local queues are handled by the buildQueues method.
             break;
+          case MAPPED:
+            // Only reached when no layer writes to this fifo, e.g. draining a backlog left by a previous run.
+            dequeues.put(name, new MappedQueue(fifoConfig.getProperties(), EnvelopeCodec.forName(fifoConfig.getCodec())));
+            break;
           case KAFKA:
-            var dk = new KafkaDequeue(fifoConfig.getProperties());
+            var dk = new KafkaDequeue(fifoConfig.getProperties(), fifoConfig.getBatchSize(),
+              EnvelopeCodec.forName(fifoConfig.getCodec()));
             dequeues.put(name, dk);
             break;
           default:
@@ -109,6 +131,33 @@ public class FifoManager {
       });
   }
 
+  private void registerGauges() {
+    // Local and mapped fifos sit in both maps, so collect them by name to register each only once.
+    final var measurable = new HashMap<String, MeasurableFifo>();
+    Stream.concat(queues.entrySet().stream(), dequeues.entrySet().stream())
+      .filter(e -> e.getValue() instanceof MeasurableFifo)
+      .forEach(e -> measurable.put(e.getKey(), (MeasurableFifo) e.getValue()));
+    measurable.forEach((name, fifo) -> {
+      metrics.gauge("magpie_fifo_depth", fifo::getDepth, "fifo", name);
+      metrics.gauge("magpie_fifo_depth_high_water_mark", fifo::getHighWaterMark, "fifo", name);
+    });
+  }
+
+  /**
+   * Closes the fifos that hold resources, such as the files of mapped fifos.
+   */
+  public void close() {
+    Stream.concat(queues.values().stream(), dequeues.values().stream())
+      .filter(fifo -> fifo instanceof Closeable)
+      .distinct()
+      .forEach(fifo -> {
+        try {
+          ((Closeable) fifo).close();
+        } catch (IOException ex) {
+          LOGGER.warn("Couldn't close fifo: {}", ex.getMessage());
+        }
+      });
+  }
 
   public FifoQueue getQueue(String name) {
     return queues.get(name);
@@ -21,4 +21,13 @@ import io.openraven.magpie.api.MagpieEnvelope;
 @FunctionalInterface
 public interface FifoQueue {
   void add(MagpieEnvelope env) throws FifoException;
+
+  /**
+   * Signals that the named layer will add nothing further to this queue.  The marker must be ordered after every
+   * envelope the layer previously added.
+   * @param layerName The name of the producing layer.
+   */
+  default void addEndOfStream(String layerName) throws FifoException {
+    add(EndOfStream.marker(layerName));
+  }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.io.IOException;
+
+/**
+ * {@link EnvelopeCodec} implementations backed by Jackson.  JSON matches the historical wire format, while the binary
+ * Smile and CBOR encodings are considerably smaller and cheaper to parse.
+ */
+public class JacksonEnvelopeCodec implements EnvelopeCodec {
+
+  public static final JacksonEnvelopeCodec JSON = new JacksonEnvelopeCodec(new JsonFactory());
+
+  // Shared string values let Smile back-reference repeated values (ARNs, account ids, region names and the like)
+  // within an envelope instead of writing them out again.
+  public static final JacksonEnvelopeCodec SMILE = new JacksonEnvelopeCodec(SmileFactory.builder()
+    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+    .build());
+
+  public static final JacksonEnvelopeCodec CBOR = new JacksonEnvelopeCodec(new CBORFactory());
+
+  private final ObjectMapper mapper;
+
+  public JacksonEnvelopeCodec(JsonFactory factory) {
+    this.mapper = new ObjectMapper(factory)
+      .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+      .findAndRegisterModules();
+  }
+
+  @Override
+  public byte[] encode(MagpieEnvelope env) throws FifoException {
+    try {
+      return mapper.writeValueAsBytes(env);
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't serialize envelope", ex);
+    }
+  }
+
+  @Override
+  public MagpieEnvelope decode(byte[] bytes) throws FifoException {
+    try {
+      return mapper.readValue(bytes, MagpieEnvelope.class);
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't deserialize envelope", ex);
+    }
+  }
+}
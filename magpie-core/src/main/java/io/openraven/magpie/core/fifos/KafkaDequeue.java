@@ -16,71 +16,154 @@
 
 package io.openraven.magpie.core.fifos;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.core.config.ConfigException;
+import io.openraven.magpie.core.config.FifoConfig;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 public class KafkaDequeue implements FifoDequeue{
 
   private static final Logger LOGGER = LoggerFactory.getLogger(KafkaDequeue.class);
 
-  private static final ObjectMapper MAPPER = new ObjectMapper()
-    .enable(SerializationFeature.INDENT_OUTPUT)
-    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-    .findAndRegisterModules();
-
-  // How long to poll before returning (in ms).
-  private static final long POLL_TIMEOUT = 100L;
+  // How long to poll before returning.
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100L);
 
   private static final Map<String, Object> DEFAULT_PROPERTIES = Map.of(
     ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
-    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
-    ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1  // We need to adjust the FifoDequeue API to allow more than 1.
+    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName()
   );
 
-  private final Consumer<String, String> consumer;
+  // KafkaConsumer isn't thread-safe, so polls from concurrent layer workers are serialized.
+  private final Consumer<String, byte[]> consumer;
+  private final EnvelopeCodec codec;
+  private final String topic;
+  // The layers of this process writing to the topic, whose end-of-stream markers are tracked.
+  private volatile Set<String> upstreams = Set.of();
+  // Partitions on which each producer's end-of-stream marker has been seen so far.
+  private final Map<String, Set<Integer>> markerPartitions = new HashMap<>();
+  // Producers whose markers couldn't be tracked, logged once each.
+  private final Set<String> untracked = new HashSet<>();
+  private int partitionCount;
+  // Records fetched by the consumer but not yet handed out by poll()/pollBatch().
+  private final Deque<MagpieEnvelope> pending = new ArrayDeque<>();
 
   public KafkaDequeue(Map<String, Object> properties) {
+    this(properties, FifoConfig.DEFAULT_BATCH_SIZE, JacksonEnvelopeCodec.JSON);
+  }
+
+  public KafkaDequeue(Map<String, Object> properties, int batchSize, EnvelopeCodec codec) {
+    this.codec = codec;
     var t = properties.remove("topic");
     if (Objects.isNull(t)) {
       throw new ConfigException("Kafka 'topic' value must be set under properties");
     }
     var props = new HashMap<String, Object>();
     props.putAll(DEFAULT_PROPERTIES);
+    // Fetch a full batch per round trip unless explicitly overridden in the fifo properties.
+    props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
     props.putAll(properties);
 
+    topic = t.toString();
     consumer = new KafkaConsumer<>(props);
-    consumer.subscribe(List.of(t.toString()));
+    consumer.subscribe(List.of(topic));
+  }
+
+  KafkaDequeue(Consumer<String, byte[]> consumer, String topic, EnvelopeCodec codec) {
+    this.consumer = consumer;
+    this.topic = topic;
+    this.codec = codec;
+    consumer.subscribe(List.of(topic));
+  }
+
+  @Override
+  public void setUpstreams(Collection<String> upstreams) {
+    this.upstreams = Set.copyOf(upstreams);
   }
 
   @Override
   public Optional<MagpieEnvelope> poll() throws FifoException {
-    var records = consumer.poll(Duration.ofMillis(POLL_TIMEOUT));
-    if (!records.isEmpty()) {
-      for (var r : records) {
-        try {
-          return Optional.of(MAPPER.readValue(r.value(), MagpieEnvelope.class));
-        } catch (JsonProcessingException ex) {
-          throw new FifoException("Couldn't deserialize envelope", ex);
+    return poll(POLL_TIMEOUT);
+  }
+
+  @Override
+  public synchronized Optional<MagpieEnvelope> poll(Duration wait) throws FifoException {
+    if (pending.isEmpty()) {
+      fetch(wait);
+    }
+    return Optional.ofNullable(pending.poll());
+  }
+
+  @Override
+  public synchronized List<MagpieEnvelope> pollBatch(int max, Duration wait) throws FifoException {
+    if (pending.isEmpty()) {
+      fetch(wait);
+    }
+    final var batch = new ArrayList<MagpieEnvelope>(Math.min(max, pending.size()));
+    while (batch.size() < max && !pending.isEmpty()) {
+      batch.add(pending.poll());
+    }
+    return batch;
+  }
+
+  private void fetch(Duration wait) {
+    // The consumer blocks until records arrive or the wait elapses, so no additional back-off is required.
+    for (var r : consumer.poll(wait)) {
+      try {
+        final var env = codec.decode(r.value());
+        if (EndOfStream.isMarker(env)) {
+          final var producer = EndOfStream.producer(env);
+          // Markers from other processes sharing the topic are dropped, whatever partitions this consumer holds.
+          if (!upstreams.contains(producer) || !lastMarker(producer, r.partition())) {
+            continue;
+          }
         }
+        pending.add(env);
+      } catch (FifoException ex) {
+        LOGGER.warn("Couldn't deserialize envelope at {}-{}@{}", r.topic(), r.partition(), r.offset(), ex);
       }
     }
+  }
 
-    return Optional.empty();
+  // A producer writes its marker to every partition, and it's only passed on once read from all of them; at that
+  // point everything the producer wrote before it has been consumed too.  This requires a single consumer to own every
+  // partition, as is the case when producer and consumer run in the same Magpie process.  Otherwise the marker is never
+  // passed on, and the layer runs until stopped like any layer fed by other processes.
+  private boolean lastMarker(String layerName, int partition) {
+    if (partitionCount == 0) {
+      partitionCount = consumer.partitionsFor(topic).size();
+    }
+    if (consumer.assignment().size() < partitionCount) {
+      if (untracked.add(layerName)) {
+        LOGGER.warn("End-of-stream from {} can't be tracked on {}, whose {} partitions are shared with other consumers " +
+          "in the group; the layer will run until stopped", layerName, topic, partitionCount);
+      }
+      return false;
+    }
+    final var seen = markerPartitions.computeIfAbsent(layerName, k -> new HashSet<>());
+    seen.add(partition);
+    if (seen.size() < partitionCount) {
+      return false;
+    }
+    markerPartitions.remove(layerName);
+    return true;
   }
 }
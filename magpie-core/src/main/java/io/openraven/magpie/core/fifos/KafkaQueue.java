@@ -16,15 +16,13 @@
 
 package io.openraven.magpie.core.fifos;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.core.config.ConfigException;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
 import java.util.HashMap;
@@ -33,23 +31,27 @@ import java.util.Objects;
 
 public class KafkaQueue implements FifoQueue {
 
-  private static final ObjectMapper MAPPER = new ObjectMapper()
-    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-    .findAndRegisterModules();
-
   private static final Map<String, Object> DEFAULT_PROPERTIES = Map.of(
     ProducerConfig.ACKS_CONFIG, "all",
+    // Retries mustn't reorder records within a partition, or end-of-stream markers could overtake data.
+    ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true",
     ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName(),
-    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName(),
+    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName(),
     ProducerConfig.COMPRESSION_TYPE_CONFIG, "snappy",
     ProducerConfig.LINGER_MS_CONFIG, "20",
     ProducerConfig.BATCH_SIZE_CONFIG, Integer.toString(64*1024) // 64 KB batch size
   );
 
-  private final Producer<String, String> producer;
+  private final Producer<String, byte[]> producer;
   private final String topic;
+  private final EnvelopeCodec codec;
 
   public KafkaQueue(Map<String, Object> properties) {
+    this(properties, JacksonEnvelopeCodec.JSON);
+  }
+
+  public KafkaQueue(Map<String, Object> properties, EnvelopeCodec codec) {
+    this.codec = codec;
     var props = new HashMap<String, Object>();
     props.putAll(DEFAULT_PROPERTIES);
     props.putAll(properties);
@@ -64,10 +66,17 @@ public class KafkaQueue implements FifoQueue {
 
   @Override
   public void add(MagpieEnvelope env) throws FifoException {
-    try {
-      producer.send(new ProducerRecord<>(topic, MAPPER.writeValueAsString(env)));
-    } catch (JsonProcessingException ex) {
-      throw new FifoException("Couldn't serialize envelope", ex);
+    producer.send(new ProducerRecord<>(topic, codec.encode(env)));
+  }
+
+  @Override
+  public void addEndOfStream(String layerName) throws FifoException {
+    // Each consumer only reads the partitions assigned to it, so the marker is written to every partition.  Each copy
+    // follows everything previously written to that partition.
+    final var bytes = codec.encode(EndOfStream.marker(layerName));
+    for (var partition : producer.partitionsFor(topic)) {
+      producer.send(new ProducerRecord<>(topic, partition.partition(), null, bytes));
     }
+    producer.flush();
   }
 }
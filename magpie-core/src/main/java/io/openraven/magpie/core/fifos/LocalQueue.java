@@ -17,24 +17,115 @@
 package io.openraven.magpie.core.fifos;
 
 import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.config.ConfigException;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class LocalQueue implements FifoQueue, FifoDequeue{
+/**
+ * An in-process FIFO.  By default the queue is unbounded.  Setting a {@code capacity} property bounds it to a fixed
+ * size ring buffer, in which case the {@code overflow} property (see {@link OverflowPolicy}, defaulting to
+ * {@code block}) determines what happens to emitters when the queue is full.
+ */
+public class LocalQueue implements FifoQueue, FifoDequeue, MeasurableFifo {
+
+  public static final String CAPACITY_PROPERTY = "capacity";
+  public static final String OVERFLOW_PROPERTY = "overflow";
 
-  private final Queue<MagpieEnvelope> queue = new ConcurrentLinkedQueue<>();
+  private final BlockingQueue<MagpieEnvelope> queue;
+  private final OverflowPolicy overflowPolicy;
+  private final AtomicInteger highWaterMark = new AtomicInteger();
+
+  public LocalQueue() {
+    this(Map.of());
+  }
+
+  public LocalQueue(Map<String, Object> properties) {
+    final var capacity = properties.get(CAPACITY_PROPERTY);
+    if (capacity == null) {
+      queue = new LinkedBlockingQueue<>();
+    } else {
+      try {
+        queue = new ArrayBlockingQueue<>(Integer.parseInt(capacity.toString()));
+      } catch (IllegalArgumentException ex) {
+        throw new ConfigException("Illegal local queue capacity: " + capacity, ex);
+      }
+    }
+
+    final var overflow = properties.getOrDefault(OVERFLOW_PROPERTY, OverflowPolicy.BLOCK.name());
+    try {
+      overflowPolicy = OverflowPolicy.valueOf(overflow.toString().toUpperCase());
+    } catch (IllegalArgumentException ex) {
+      throw new ConfigException("Illegal local queue overflow policy: " + overflow, ex);
+    }
+  }
 
   @Override
   public Optional<MagpieEnvelope> poll() throws FifoException {
     return Optional.ofNullable(queue.poll());
   }
 
+  @Override
+  public Optional<MagpieEnvelope> poll(Duration wait) throws FifoException {
+    try {
+      return Optional.ofNullable(queue.poll(wait.toMillis(), TimeUnit.MILLISECONDS));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Interrupted while waiting on local queue", ex);
+    }
+  }
+
+  @Override
+  public List<MagpieEnvelope> pollBatch(int max, Duration wait) throws FifoException {
+    final var batch = new ArrayList<MagpieEnvelope>();
+    poll(wait).ifPresent(env -> {
+      batch.add(env);
+      queue.drainTo(batch, max - 1);
+    });
+    return batch;
+  }
+
   @Override
   public void add(MagpieEnvelope env) throws FifoException {
-    if (!queue.add(env)) {
-      throw new FifoException("Couldn't enqueue " + env.toString());
+    if (overflowPolicy == OverflowPolicy.BLOCK) {
+      try {
+        queue.put(env);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new FifoException("Interrupted while waiting for space on local queue", ex);
+      }
+    } else if (!queue.offer(env)) {
+      throw new FifoException("Local queue full, couldn't enqueue " + env.toString());
+    }
+    highWaterMark.accumulateAndGet(queue.size(), Math::max);
+  }
+
+  @Override
+  public void addEndOfStream(String layerName) throws FifoException {
+    // Dropping the marker would stall every downstream layer, so it waits for space regardless of the overflow policy.
+    try {
+      queue.put(EndOfStream.marker(layerName));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Interrupted while waiting for space on local queue", ex);
     }
   }
+
+  @Override
+  public long getDepth() {
+    return queue.size();
+  }
+
+  @Override
+  public long getHighWaterMark() {
+    return highWaterMark.get();
+  }
 }
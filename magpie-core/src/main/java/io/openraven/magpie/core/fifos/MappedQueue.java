@@ -0,0 +1,449 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.config.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A durable, single-node FIFO backed by append-only memory-mapped segment files.  Envelopes are appended to the current
+ * segment as length-prefixed records and a small mapped index file tracks the consumer's position, so a process that
+ * dies mid-scan resumes from the first unconsumed envelope when restarted with the same {@code path}.  The position only
+ * moves past a batch once the batch, and every batch polled before it, has been {@link #acknowledge acknowledged}, so
+ * batches in flight when the process dies are delivered again.  Fully consumed segments are deleted, keeping disk usage
+ * proportional to the backlog rather than the size of the scan.
+ * <p>
+ * End-of-stream markers are only meaningful to the run that wrote them, so markers left over from an earlier run are
+ * dropped rather than delivered, and can't complete a downstream layer while the new run is still producing.
+ *
+ * The directory must not be shared between processes.  Properties:
+ * <ul>
+ *   <li>{@code path} - directory holding the segment and index files (required)</li>
+ *   <li>{@code segmentSize} - size of each segment file in bytes (defaults to 64 MB)</li>
+ * </ul>
+ */
+public class MappedQueue implements FifoQueue, FifoDequeue, MeasurableFifo, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MappedQueue.class);
+
+  public static final String PATH_PROPERTY = "path";
+  public static final String SEGMENT_SIZE_PROPERTY = "segmentSize";
+
+  private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final Pattern SEGMENT_PATTERN = Pattern.compile("\\d{20}\\.seg");
+  private static final String INDEX_FILE = "read.idx";
+
+  // A record is a 4 byte length followed by the payload.  Mapped files are zero filled, so a zero length marks the
+  // end of written data, while END_OF_SEGMENT tells the reader the writer has rolled over to the next segment.
+  private static final int HEADER_SIZE = Integer.BYTES;
+  private static final int END_OF_SEGMENT = -1;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final EnvelopeCodec codec;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+
+  // A batch handed out but not yet acknowledged, and the read position just past it.
+  private static class InFlight {
+    private final long segment;
+    private final int offset;
+    // Set once decoded, outside the lock; acknowledgements find their batch by its first envelope.
+    private volatile MagpieEnvelope first;
+    private boolean acknowledged;
+
+    InFlight(long segment, int offset) {
+      this.segment = segment;
+      this.offset = offset;
+    }
+  }
+
+  private final MappedByteBuffer index;
+  private final Deque<InFlight> inFlight = new ArrayDeque<>();
+  // The oldest segment still on disk, and the end of the records written by an earlier run.
+  private long oldestSegment;
+  private long recoveredSegment;
+  private int recoveredOffset;
+  private boolean closed;
+  private long writeSegment;
+  private MappedByteBuffer writeBuffer;
+  private int writeOffset;
+  private long readSegment;
+  private MappedByteBuffer readBuffer;
+  private int readOffset;
+  private long depth;
+  private long highWaterMark;
+
+  public MappedQueue(Map<String, Object> properties, EnvelopeCodec codec) {
+    final var path = properties.get(PATH_PROPERTY);
+    if (Objects.isNull(path)) {
+      throw new ConfigException("Mapped fifo 'path' value must be set under properties");
+    }
+    final var size = Long.parseLong(properties.getOrDefault(SEGMENT_SIZE_PROPERTY, DEFAULT_SEGMENT_SIZE).toString());
+    if (size <= 2 * HEADER_SIZE || size > Integer.MAX_VALUE) {
+      throw new ConfigException("Illegal mapped fifo segment size: " + size);
+    }
+
+    this.directory = Path.of(path.toString());
+    this.segmentSize = (int) size;
+    this.codec = codec;
+
+    try {
+      Files.createDirectories(directory);
+      try (var channel = FileChannel.open(directory.resolve(INDEX_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * Long.BYTES);
+      }
+      recover();
+    } catch (IOException ex) {
+      throw new ConfigException("Couldn't open mapped fifo at " + directory, ex);
+    }
+  }
+
+  /**
+   * Restore the read position from the index and the write position by scanning the newest segment for the end of
+   * its written records.
+   */
+  private void recover() throws IOException {
+    final var segments = listSegments();
+    readSegment = index.getLong(0);
+    readOffset = (int) index.getLong(Long.BYTES);
+    if (segments.isEmpty() || readSegment < segments.get(0)) {
+      // Fresh directory, or the index refers to a segment that has since been consumed and deleted.
+      readSegment = segments.isEmpty() ? 0 : segments.get(0);
+      readOffset = 0;
+    }
+    writeSegment = segments.isEmpty() ? readSegment : segments.get(segments.size() - 1);
+    writeBuffer = map(writeSegment);
+    writeOffset = 0;
+    int length;
+    while (writeOffset + HEADER_SIZE <= segmentSize && (length = writeBuffer.getInt(writeOffset)) > 0) {
+      writeOffset += HEADER_SIZE + length;
+    }
+    readBuffer = readSegment == writeSegment ? writeBuffer : map(readSegment);
+    oldestSegment = readSegment;
+    recoveredSegment = writeSegment;
+    recoveredOffset = writeOffset;
+    saveIndex(readSegment, readOffset);
+
+    // Count the envelopes left over from a previous run so depth reflects the recovered backlog.
+    var segment = readSegment;
+    var buffer = readBuffer;
+    var offset = readOffset;
+    while (segment < writeSegment || offset < writeOffset) {
+      length = buffer.getInt(offset);
+      if (length == END_OF_SEGMENT || length == 0) {
+        segment++;
+        buffer = segment == writeSegment ? writeBuffer : map(segment);
+        offset = 0;
+      } else {
+        depth++;
+        offset += HEADER_SIZE + length;
+      }
+    }
+    highWaterMark = depth;
+    if (depth > 0) {
+      LOGGER.info("Recovered {} unconsumed envelopes from {}", depth, directory);
+    }
+  }
+
+  @Override
+  public void add(MagpieEnvelope env) throws FifoException {
+    final var bytes = codec.encode(env);
+    if (bytes.length > segmentSize - 2 * HEADER_SIZE) {
+      throw new FifoException(String.format("Envelope of %d bytes exceeds mapped fifo segment size %d", bytes.length, segmentSize));
+    }
+
+    lock.lock();
+    try {
+      checkOpen();
+      if (writeOffset + 2 * HEADER_SIZE + bytes.length > segmentSize) {
+        roll();
+      }
+      // Write the payload before its length so a reader (or recovery) never sees a partially written record.
+      writeBuffer.put(writeOffset + HEADER_SIZE, bytes);
+      writeBuffer.putInt(writeOffset, bytes.length);
+      writeOffset += HEADER_SIZE + bytes.length;
+      depth++;
+      highWaterMark = Math.max(highWaterMark, depth);
+      notEmpty.signal();
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't roll mapped fifo segment", ex);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Optional<MagpieEnvelope> poll() throws FifoException {
+    return poll(Duration.ZERO);
+  }
+
+  @Override
+  public Optional<MagpieEnvelope> poll(Duration wait) throws FifoException {
+    final var batch = pollBatch(1, wait);
+    return batch.isEmpty() ? Optional.empty() : Optional.of(batch.get(0));
+  }
+
+  @Override
+  public List<MagpieEnvelope> pollBatch(int max, Duration wait) throws FifoException {
+    final var records = new ArrayList<byte[]>();
+    // How many of the records were written by an earlier run.
+    var recovered = 0;
+    final InFlight batchEnd;
+    lock.lock();
+    try {
+      checkOpen();
+      var remaining = wait.toNanos();
+      while (depth == 0) {
+        if (remaining <= 0) {
+          return List.of();
+        }
+        remaining = notEmpty.awaitNanos(remaining);
+        checkOpen();
+      }
+      while (records.size() < max && depth > 0) {
+        final var length = readBuffer.getInt(readOffset);
+        if (length == END_OF_SEGMENT || (length == 0 && readSegment < writeSegment)) {
+          advanceSegment();
+          continue;
+        }
+        if (readSegment < recoveredSegment || (readSegment == recoveredSegment && readOffset < recoveredOffset)) {
+          recovered++;
+        }
+        final var bytes = new byte[length];
+        readBuffer.get(readOffset + HEADER_SIZE, bytes);
+        readOffset += HEADER_SIZE + length;
+        depth--;
+        records.add(bytes);
+      }
+      batchEnd = new InFlight(readSegment, readOffset);
+      inFlight.add(batchEnd);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Interrupted while waiting on mapped fifo", ex);
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't advance mapped fifo segment", ex);
+    } finally {
+      lock.unlock();
+    }
+
+    // Decoding happens outside the lock so concurrent workers only serialize on the file access itself.
+    final var batch = new ArrayList<MagpieEnvelope>(records.size());
+    for (int i = 0; i < records.size(); i++) {
+      final var env = codec.decode(records.get(i));
+      if (i < recovered && EndOfStream.isMarker(env)) {
+        LOGGER.debug("Dropping end-of-stream marker from {} left by an earlier run", EndOfStream.producer(env));
+        continue;
+      }
+      batch.add(env);
+    }
+    if (batch.isEmpty()) {
+      // Nothing to hand out, so nothing will acknowledge it.
+      acknowledge(batchEnd);
+    } else {
+      batchEnd.first = batch.get(0);
+    }
+    return batch;
+  }
+
+  @Override
+  public void acknowledge(List<MagpieEnvelope> batch) throws FifoException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    lock.lock();
+    try {
+      for (var entry : inFlight) {
+        if (entry.first == batch.get(0)) {
+          acknowledge(entry);
+          return;
+        }
+      }
+      LOGGER.debug("Ignoring acknowledgement of a batch that isn't in flight");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void acknowledge(InFlight entry) throws FifoException {
+    lock.lock();
+    try {
+      entry.acknowledged = true;
+      // The persisted position only covers the batches acknowledged without a gap since the last one it covered.
+      InFlight committed = null;
+      while (!inFlight.isEmpty() && inFlight.peek().acknowledged) {
+        committed = inFlight.poll();
+      }
+      if (committed == null || closed) {
+        return;
+      }
+      saveIndex(committed.segment, committed.offset);
+      while (oldestSegment < committed.segment) {
+        if (!Files.deleteIfExists(segmentPath(oldestSegment))) {
+          LOGGER.debug("Consumed segment {} already removed from {}", oldestSegment, directory);
+        }
+        oldestSegment++;
+      }
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't delete consumed mapped fifo segment", ex);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long getDepth() {
+    lock.lock();
+    try {
+      return depth;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long getHighWaterMark() {
+    lock.lock();
+    try {
+      return highWaterMark;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void roll() throws IOException {
+    writeBuffer.putInt(writeOffset, END_OF_SEGMENT);
+    writeBuffer.force();
+    if (readBuffer != writeBuffer) {
+      // The reader maps the segment afresh once it gets there.
+      unmap(writeBuffer);
+    }
+    writeSegment++;
+    writeBuffer = map(writeSegment);
+    writeOffset = 0;
+    LOGGER.debug("Rolled {} to segment {}", directory, writeSegment);
+  }
+
+  private void advanceSegment() throws IOException {
+    // The consumed segment is deleted once its batches have been acknowledged.
+    if (readBuffer != writeBuffer) {
+      unmap(readBuffer);
+    }
+    readSegment++;
+    readBuffer = readSegment == writeSegment ? writeBuffer : map(readSegment);
+    readOffset = 0;
+  }
+
+  private void saveIndex(long segment, int offset) {
+    index.putLong(0, segment);
+    index.putLong(Long.BYTES, offset);
+  }
+
+  private void checkOpen() throws FifoException {
+    if (closed) {
+      throw new FifoException("Mapped fifo at " + directory + " is closed");
+    }
+  }
+
+  /**
+   * Forces written envelopes and the read position to disk and releases the mapped files.  Batches not yet acknowledged
+   * are delivered again when the fifo is next opened.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      writeBuffer.force();
+      index.force();
+      if (readBuffer != writeBuffer) {
+        unmap(readBuffer);
+      }
+      unmap(writeBuffer);
+      unmap(index);
+      // Wakes any worker waiting on an empty fifo, which then finds it closed.
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Mappings are otherwise only released once their buffers are garbage collected, which keeps consumed segments'
+  // disk space and address space in use.  The buffer mustn't be touched afterwards.
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      final Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      final var unsafe = field.get(null);
+      unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.debug("Couldn't unmap mapped fifo buffer, it will be released once collected: {}", ex.getMessage());
+    }
+  }
+
+  private MappedByteBuffer map(long segment) throws IOException {
+    try (var channel = FileChannel.open(segmentPath(segment),
+      StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+  }
+
+  private Path segmentPath(long segment) {
+    return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+  }
+
+  private List<Long> listSegments() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files
+        .map(p -> p.getFileName().toString())
+        .filter(name -> SEGMENT_PATTERN.matcher(name).matches())
+        .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+}
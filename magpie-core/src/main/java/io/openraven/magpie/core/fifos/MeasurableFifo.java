@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openraven.magpie.core.fifos;
+
+/**
+ * Implemented by fifos that can report how many envelopes are waiting in them. Remote fifos such as Kafka
+ * don't implement this; their lag is better observed with the broker's own tooling.
+ */
+public interface MeasurableFifo {
+
+  /**
+   * @return The number of envelopes currently waiting to be consumed.
+   */
+  long getDepth();
+
+  /**
+   * @return The greatest depth observed since this fifo was opened.
+   */
+  long getHighWaterMark();
+}
@@ -18,5 +18,6 @@ package io.openraven.magpie.core.fifos;
 
 public enum QueueType {
   LOCAL,
-  KAFKA
+  KAFKA,
+  MAPPED
 }
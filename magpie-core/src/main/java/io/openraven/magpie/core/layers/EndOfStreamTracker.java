@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openraven.magpie.core.layers;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.fifos.EndOfStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Strips end-of-stream markers out of dequeued batches and tracks which upstream layers have finished.  Shared by all
+ * workers of a layer.
+ */
+class EndOfStreamTracker {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EndOfStreamTracker.class);
+
+  private final String layerName;
+  private final Set<String> upstreams;
+  private final Set<String> finished = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param upstreams The names of the layers writing to this layer's dequeue.  Markers from any other producer, such as
+   *                  another process sharing a Kafka topic, are ignored.  With no upstream layers (e.g. when consuming a
+   *                  Kafka topic fed by other processes) the stream never ends.
+   */
+  EndOfStreamTracker(String layerName, Collection<String> upstreams) {
+    this.layerName = layerName;
+    this.upstreams = Set.copyOf(upstreams);
+  }
+
+  /**
+   * @return The batch without any end-of-stream markers.
+   */
+  List<MagpieEnvelope> filter(List<MagpieEnvelope> batch) {
+    if (batch.stream().noneMatch(EndOfStream::isMarker)) {
+      return batch;
+    }
+    final var envelopes = new ArrayList<MagpieEnvelope>(batch.size());
+    for (var env : batch) {
+      if (EndOfStream.isMarker(env)) {
+        final var producer = EndOfStream.producer(env);
+        if (!upstreams.contains(producer)) {
+          LOGGER.debug("Layer {} ignoring end-of-stream from {}, which isn't upstream of it", layerName, producer);
+        } else if (finished.add(producer)) {
+          LOGGER.debug("Layer {} received end-of-stream from {}", layerName, producer);
+        }
+      } else {
+        envelopes.add(env);
+      }
+    }
+    return envelopes;
+  }
+
+  boolean isComplete() {
+    return !upstreams.isEmpty() && finished.containsAll(upstreams);
+  }
+}
@@ -16,12 +16,54 @@
 
 package io.openraven.magpie.core.layers;
 
+import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.core.fifos.FifoException;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public interface Layer {
 
+  // Metric names shared by all layer implementations.
+  String ENVELOPES_IN = "magpie_layer_envelopes_in_total";
+  String ENVELOPES_OUT = "magpie_layer_envelopes_out_total";
+  String EMIT_FAILURES = "magpie_layer_emit_failures_total";
+  String PLUGIN_ACCEPT_SECONDS = "magpie_plugin_accept_seconds";
+  String PLUGIN_DISCOVER_SECONDS = "magpie_plugin_discover_seconds";
+
   void exec() throws FifoException;
   String getName();
   LayerType getType();
+
+  /**
+   * Shuts down the layer's plugins and, for layers with a queue, signals end-of-stream downstream.  Called once all
+   * workers running the layer have returned.
+   */
   void shutdown();
+
+  /**
+   * @return True once every upstream layer has signalled end-of-stream, after which exec() will find no more work.
+   * Origin layers run exec() only once and always return false.
+   */
+  default boolean isComplete() {
+    return false;
+  }
+
+  /**
+   * @return The number of envelopes this layer has handled so far. Origin layers count envelopes emitted, all other
+   * layers count envelopes dequeued.
+   */
+  long getProcessedCount();
+
+  /**
+   * @return The batch without markers for unchanged resources, for plugins that don't accept them.  The batch itself
+   * when it holds none.
+   * @see io.openraven.magpie.api.MagpiePlugin#acceptsUnchanged()
+   */
+  static List<MagpieEnvelope> withoutUnchanged(List<MagpieEnvelope> batch) {
+    if (batch.stream().noneMatch(MagpieEnvelope::isUnchanged)) {
+      return batch;
+    }
+    return batch.stream().filter(env -> !MagpieEnvelope.isUnchanged(env)).collect(Collectors.toList());
+  }
 }
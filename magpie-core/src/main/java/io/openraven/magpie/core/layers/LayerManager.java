@@ -22,21 +22,27 @@ import io.openraven.magpie.api.MagpiePlugin;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.api.TerminalPlugin;
 import io.openraven.magpie.core.config.ConfigException;
+import io.openraven.magpie.core.config.FifoConfig;
 import io.openraven.magpie.core.config.LayerConfig;
 import io.openraven.magpie.core.config.MagpieConfig;
 import io.openraven.magpie.core.fifos.FifoDequeue;
 import io.openraven.magpie.core.fifos.FifoManager;
 import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import io.openraven.magpie.core.plugins.PluginManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class LayerManager {
@@ -45,13 +51,26 @@ public class LayerManager {
 
   private final MagpieConfig config;
   private final FifoManager fifoManager;
+  private final MetricsRegistry metrics;
   private final Map<String, Layer> layers = new LinkedHashMap<>();  // Preserve insertion order
+  // Names of the layers writing to each fifo
+  private final Map<String, List<String>> producers = new HashMap<>();
 
 
 
   public LayerManager(Session session, MagpieConfig config, FifoManager fifoManager, PluginManager pluginManager) {
+    this(session, config, fifoManager, pluginManager, new MetricsRegistry());
+  }
+
+  public LayerManager(Session session, MagpieConfig config, FifoManager fifoManager, PluginManager pluginManager, MetricsRegistry metrics) {
     this.config = config;
     this.fifoManager = fifoManager;
+    this.metrics = metrics;
+    config.getLayers().forEach((name, layerConfig) -> {
+      if (Objects.nonNull(layerConfig.getQueue())) {
+        producers.computeIfAbsent(layerConfig.getQueue(), k -> new ArrayList<>()).add(name);
+      }
+    });
     buildLayers(session, fifoManager, pluginManager);
   }
 
@@ -64,22 +83,34 @@ public class LayerManager {
         .collect(Collectors.toList());
 
       final var layerType = LayerType.valueOf(layerConfig.getType().toUpperCase());
+      if (layerConfig.getConcurrency() < 1 || (layerType == LayerType.ORIGIN && layerConfig.getConcurrency() != 1)) {
+        throw new ConfigException(String.format("Illegal concurrency for %s layer %s: %d", layerType, name, layerConfig.getConcurrency()));
+      }
       switch (layerType) {
         case ORIGIN:
+          checkLocalDownstream(name, plugins);
           layers.put(name, new OriginLayer(name, session,
             plugins.stream().map(p -> (OriginPlugin)p).collect(Collectors.toList()),
-            getOrThrowQueue(name, layerConfig)));
+            getOrThrowQueue(name, layerConfig),
+            getSessionMetadata(name, layerConfig),
+            metrics));
           break;
         case INTERMEDIATE:
           layers.put(name, new IntermediateLayer(name,
             getOrThrowDequeue(name, layerConfig),
             plugins.stream().map(p -> (IntermediatePlugin)p).collect(Collectors.toList()),
-            getOrThrowQueue(name, layerConfig)));
+            getOrThrowQueue(name, layerConfig),
+            getBatchSize(name, layerConfig),
+            getUpstreams(name),
+            metrics));
           break;
         case TERMINAL:
           layers.put(name, new TerminalLayer(name,
             getOrThrowDequeue(name, layerConfig),
-            plugins.stream().map(p -> (TerminalPlugin)p).collect(Collectors.toList())));
+            plugins.stream().map(p -> (TerminalPlugin)p).collect(Collectors.toList()),
+            getBatchSize(name, layerConfig),
+            getUpstreams(name),
+            metrics));
           break;
         default:
           throw new ConfigException(String.format("Illegal type for layer %s: %s", name, layerConfig.getType()));
@@ -89,6 +120,38 @@ public class LayerManager {
     });
   }
 
+  private void checkLocalDownstream(String layerName, List<MagpiePlugin> plugins) {
+    for (var plugin : plugins) {
+      if (!((OriginPlugin<?>) plugin).requiresLocalDownstream()) {
+        continue;
+      }
+      final var kafka = kafkaDownstream(layerName, new HashSet<>());
+      if (kafka.isPresent()) {
+        throw new ConfigException(String.format("Plugin %s in layer %s needs its envelopes handled on this host, but " +
+          "they pass through Kafka fifo %s", plugin.id(), layerName, kafka.get()));
+      }
+    }
+  }
+
+  /**
+   * @return A Kafka fifo the layer's envelopes pass through, directly or through the layers downstream of it.
+   */
+  private Optional<String> kafkaDownstream(String layerName, Set<String> visited) {
+    final var queueName = config.getLayers().get(layerName).getQueue();
+    if (Objects.isNull(queueName) || !visited.add(queueName)) {
+      return Optional.empty();
+    }
+    final var fifoConfig = config.getFifos().get(queueName);
+    if (Objects.nonNull(fifoConfig) && "kafka".equalsIgnoreCase(fifoConfig.getType())) {
+      return Optional.of(queueName);
+    }
+    return config.getLayers().entrySet().stream()
+      .filter(layer -> queueName.equals(layer.getValue().getDequeue()))
+      .map(layer -> kafkaDownstream(layer.getKey(), visited))
+      .flatMap(Optional::stream)
+      .findFirst();
+  }
+
   private FifoQueue getOrThrowQueue(String layerName, LayerConfig layerConfig) {
     final var queueName = layerConfig.getQueue();
     if (Objects.isNull(queueName)) {
@@ -112,9 +175,56 @@ public class LayerManager {
     if (Objects.isNull(dequeue)) {
       throw new ConfigException("Couldn't find dequeue " + dequeueName);
     }
+    dequeue.setUpstreams(getUpstreams(layerName));
     return dequeue;
   }
 
+  private int getBatchSize(String layerName, LayerConfig layerConfig) {
+    final var fifoConfig = config.getFifos().get(layerConfig.getDequeue());
+    final var batchSize = Objects.isNull(fifoConfig) ? FifoConfig.DEFAULT_BATCH_SIZE : fifoConfig.getBatchSize();
+    if (batchSize < 1) {
+      throw new ConfigException(String.format("Illegal batch size for layer %s: %d", layerName, batchSize));
+    }
+    return batchSize;
+  }
+
+  private SessionMetadata getSessionMetadata(String layerName, LayerConfig layerConfig) {
+    final var sessionMetadata = layerConfig.getSessionMetadata();
+    try {
+      return SessionMetadata.valueOf(Objects.requireNonNullElse(sessionMetadata, "inline").toUpperCase());
+    } catch (IllegalArgumentException ex) {
+      throw new ConfigException(String.format("Illegal session metadata for layer %s: %s", layerName, sessionMetadata));
+    }
+  }
+
+  private List<String> getUpstreams(String layerName) {
+    final var dequeueName = config.getLayers().get(layerName).getDequeue();
+    return Objects.isNull(dequeueName) ? List.of() : producers.getOrDefault(dequeueName, List.of());
+  }
+
+  /**
+   * A layer is bounded if its input eventually ends: origin layers are bounded, as is any layer whose upstream layers
+   * are all bounded.  Layers fed (even partly) from outside this process, or by a cycle of layers, run until stopped.
+   * @param layerName The name of the layer.
+   * @return Whether the layer will complete once its upstream layers finish.
+   */
+  public boolean isBounded(String layerName) {
+    return isBounded(layerName, new HashSet<>());
+  }
+
+  private boolean isBounded(String layerName, Set<String> visiting) {
+    if (layers.get(layerName).getType() == LayerType.ORIGIN) {
+      return true;
+    }
+    final var upstreams = getUpstreams(layerName);
+    if (upstreams.isEmpty() || !visiting.add(layerName)) {
+      return false;
+    }
+    final var bounded = upstreams.stream().allMatch(u -> isBounded(u, visiting));
+    visiting.remove(layerName);
+    return bounded;
+  }
+
   public Map<String, Layer> getLayers() {
     return Collections.unmodifiableMap(layers);
   }
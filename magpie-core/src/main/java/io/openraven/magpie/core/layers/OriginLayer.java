@@ -18,6 +18,7 @@ package io.openraven.magpie.core.layers;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
@@ -28,10 +29,15 @@ import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.core.fifos.FifoException;
 import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.metrics.LatencyHistogram;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class OriginLayer implements Layer {
 
@@ -52,22 +58,37 @@ public class OriginLayer implements Layer {
   private final Collection<OriginPlugin> plugins;
   private final FifoQueue queue;
   private final String name;
+  // Computed once per session.  Each envelope gets its own copy of the metadata, as downstream plugins may modify it.
+  private final JsonNode discoveryMeta;
+  private final JsonNode discoverySessionId;
+  // Resolved once rather than on every plugin call.
+  private final Map<OriginPlugin, LatencyHistogram> pluginSeconds = new HashMap<>();
+  private final LongAdder envelopesOut;
+  private final LongAdder emitFailures;
 
-  public OriginLayer(String name, Session session, Collection<OriginPlugin> plugins, FifoQueue queue) {
+  public OriginLayer(String name, Session session, Collection<OriginPlugin> plugins, FifoQueue queue, SessionMetadata sessionMetadata, MetricsRegistry metrics) {
     this.session = session;
     this.plugins = plugins;
     this.queue = queue;
     this.name = name;
+    this.discoveryMeta = sessionMetadata == SessionMetadata.INLINE ? ANNOTATED_MAPPER.valueToTree(session) : null;
+    this.discoverySessionId = MAPPER.valueToTree(session.getId());
+    plugins.forEach(p -> pluginSeconds.put(p, metrics.histogram(Layer.PLUGIN_DISCOVER_SECONDS, "layer", name, "plugin", p.id())));
+    this.envelopesOut = metrics.counter(Layer.ENVELOPES_OUT, "layer", name);
+    this.emitFailures = metrics.counter(Layer.EMIT_FAILURES, "layer", name);
   }
 
   @Override
   public void exec() throws FifoException {
     plugins.forEach(p -> {
+      final var start = System.nanoTime();
       try {
         LOGGER.trace("Running discover for plugin {}", p.id());
         p.discover(session, this::emit);
       } catch (Exception ex) {
         LOGGER.warn("Plugin exception: {}", p.id(), ex);
+      } finally {
+        pluginSeconds.get(p).record(System.nanoTime() - start);
       }
     });
   }
@@ -77,14 +98,23 @@ public class OriginLayer implements Layer {
     return name;
   }
 
+  @Override
+  public long getProcessedCount() {
+    return envelopesOut.sum();
+  }
+
   private void emit(MagpieEnvelope env) {
     try {
       // Rather than set these values on *each* service discovery, we set it centrally here.
-      env.getContents().set("discoveryMeta", ANNOTATED_MAPPER.valueToTree(session));
-      env.getContents().set("discoverySessionId", MAPPER.valueToTree(session.getId()));
+      if (discoveryMeta != null) {
+        env.getContents().set("discoveryMeta", discoveryMeta.deepCopy());
+      }
+      env.getContents().set("discoverySessionId", discoverySessionId);
       env.setSession(session);
       queue.add(env);
+      envelopesOut.increment();
     } catch (FifoException e) {
+      emitFailures.increment();
       LOGGER.warn("Emitter exception", e);
     }
   }
@@ -97,5 +127,10 @@ public class OriginLayer implements Layer {
   @Override
   public void shutdown() {
     plugins.forEach(MagpiePlugin::shutdown);
+    try {
+      queue.addEndOfStream(name);
+    } catch (FifoException e) {
+      LOGGER.warn("Couldn't signal end-of-stream", e);
+    }
   }
 }
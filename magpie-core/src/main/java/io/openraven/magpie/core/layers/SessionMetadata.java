@@ -0,0 +1,31 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openraven.magpie.core.layers;
+
+/**
+ * How an origin layer attaches the discovery session to the envelopes it emits.
+ */
+public enum SessionMetadata {
+  /**
+   * Every envelope's contents carry the full session as {@code discoveryMeta}, alongside {@code discoverySessionId}.
+   */
+  INLINE,
+  /**
+   * Envelope contents only carry {@code discoverySessionId}.  Consumers resolve the session itself from
+   * {@link io.openraven.magpie.api.MagpieEnvelope#getSession()}.
+   */
+  REFERENCE
+}
@@ -20,41 +20,82 @@ import io.openraven.magpie.api.MagpiePlugin;
 import io.openraven.magpie.api.TerminalPlugin;
 import io.openraven.magpie.core.fifos.FifoDequeue;
 import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.metrics.LatencyHistogram;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TerminalLayer implements Layer {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(TerminalLayer.class);
 
+  // How long exec() blocks on an empty dequeue before returning control to the caller.
+  private static final Duration POLL_WAIT = Duration.ofMillis(100L);
+
   private final FifoDequeue dequeue;
   private final Collection<TerminalPlugin> plugins;
   private final String name;
+  private final int batchSize;
+  private final EndOfStreamTracker endOfStream;
+  // Resolved up front, as plugins are called on every batch.
+  private final Map<TerminalPlugin, LatencyHistogram> pluginSeconds = new HashMap<>();
+  private final LongAdder envelopesIn;
 
-  public TerminalLayer(String name, FifoDequeue dequeue, Collection<TerminalPlugin> plugins) {
+  public TerminalLayer(String name, FifoDequeue dequeue, Collection<TerminalPlugin> plugins, int batchSize, Collection<String> upstreams, MetricsRegistry metrics) {
     this.dequeue = dequeue;
     this.plugins = plugins;
     this.name = name;
+    this.batchSize = batchSize;
+    this.endOfStream = new EndOfStreamTracker(name, upstreams);
+    plugins.forEach(p -> pluginSeconds.put(p, metrics.histogram(Layer.PLUGIN_ACCEPT_SECONDS, "layer", name, "plugin", p.id())));
+    this.envelopesIn = metrics.counter(Layer.ENVELOPES_IN, "layer", name);
   }
 
   @Override
   public void exec() throws FifoException {
-    final var opt = dequeue.poll();
-    if (opt.isEmpty()) {
+    final var polled = dequeue.pollBatch(batchSize, POLL_WAIT);
+    final var batch = endOfStream.filter(polled);
+    if (batch.isEmpty()) {
+      dequeue.acknowledge(polled);
       return;
     }
-    final var env = opt.get();
-    final var pluginPath = env.getPluginPath();
-    final var lastPlugin = pluginPath.isEmpty() ? null : pluginPath.get(pluginPath.size()-1);
+    envelopesIn.add(batch.size());
+    // Markers for unchanged resources only reach the plugins that understand them.
+    final var withoutUnchanged = Layer.withoutUnchanged(batch);
     plugins.forEach(p -> {
+      final var envs = p.acceptsUnchanged() ? batch : withoutUnchanged;
+      if (envs.isEmpty()) {
+        return;
+      }
+      final var start = System.nanoTime();
       try {
-        p.accept(env);
+        if (p.isThreadSafe()) {
+          p.acceptBatch(envs);
+        } else {
+          // Several workers may run this layer concurrently, so calls into plugins that aren't thread-safe are serialized.
+          synchronized (p) {
+            p.acceptBatch(envs);
+          }
+        }
       } catch (Exception ex) {
         LOGGER.warn("Plugin exception: {}", p.id(), ex);
+      } finally {
+        pluginSeconds.get(p).record(System.nanoTime() - start);
       }
     });
+    // Durable dequeues only move past the batch now that every plugin has had it.
+    dequeue.acknowledge(polled);
+  }
+
+  @Override
+  public boolean isComplete() {
+    return endOfStream.isComplete();
   }
 
   @Override
@@ -62,6 +103,11 @@ public class TerminalLayer implements Layer {
     return name;
   }
 
+  @Override
+  public long getProcessedCount() {
+    return envelopesIn.sum();
+  }
+
   @Override
   public LayerType getType() {
     return LayerType.TERMINAL;
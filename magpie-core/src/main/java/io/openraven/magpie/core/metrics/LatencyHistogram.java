@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-bucket latency histogram, cheap enough to update on every plugin call from many threads.  Bucket bounds are
+ * in seconds and follow the Prometheus convention of cumulative "less than or equal" buckets.
+ */
+public class LatencyHistogram {
+
+  static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumNanos = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    final var seconds = nanos / 1e9;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      if (seconds <= BUCKETS[i]) {
+        buckets[i].increment();
+        break;
+      }
+    }
+    count.increment();
+    sumNanos.add(nanos);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getSumSeconds() {
+    return sumNanos.sum() / 1e9;
+  }
+
+  /**
+   * @return Cumulative counts for each bound in {@link #BUCKETS}.  Observations above the largest bound are only
+   * reflected in {@link #getCount()}.
+   */
+  public long[] getCumulativeCounts() {
+    final var cumulative = new long[BUCKETS.length];
+    long running = 0;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      running += buckets[i].sum();
+      cumulative[i] = running;
+    }
+    return cumulative;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+
+/**
+ * Exposes every metric in a {@link MetricsRegistry} as a read-only JMX attribute.  Attributes are discovered on each
+ * {@link #getMBeanInfo()} call, so metrics created after registration still show up.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  private final MetricsRegistry registry;
+
+  MetricsMBean(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    final var value = registry.snapshot().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException(attribute);
+    }
+    return value;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) {
+    throw new UnsupportedOperationException("Metrics are read-only");
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    final var snapshot = registry.snapshot();
+    final var list = new AttributeList();
+    for (var name : attributes) {
+      final var value = snapshot.get(name);
+      if (value != null) {
+        list.add(new Attribute(name, value));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) {
+    throw new UnsupportedOperationException("No operations are supported");
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    final var attributes = registry.snapshot().entrySet().stream()
+      .map(e -> new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false, false))
+      .toArray(MBeanAttributeInfo[]::new);
+    return new MBeanInfo(MetricsMBean.class.getName(), "Magpie pipeline metrics", attributes, null, null, null);
+  }
+}
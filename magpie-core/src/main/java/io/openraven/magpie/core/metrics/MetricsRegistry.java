@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the pipeline's counters, gauges and latency histograms.  Metrics are identified by a name plus optional label
+ * pairs (e.g. {@code counter("magpie_layer_envelopes_in_total", "layer", "output")}) and are created on first use, so
+ * callers should look them up once and keep the returned instance on hot paths.
+ */
+public class MetricsRegistry {
+
+  private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+  private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+  public LongAdder counter(String name, String... labels) {
+    return counters.computeIfAbsent(key(name, labels), k -> new LongAdder());
+  }
+
+  public void gauge(String name, LongSupplier value, String... labels) {
+    gauges.put(key(name, labels), value);
+  }
+
+  public LatencyHistogram histogram(String name, String... labels) {
+    return histograms.computeIfAbsent(key(name, labels), k -> new LatencyHistogram());
+  }
+
+  /**
+   * @return A flattened point-in-time view of every metric, keyed by its Prometheus-style identifier. Histograms are
+   * summarized by their {@code _count} and {@code _sum} series.
+   */
+  public Map<String, Number> snapshot() {
+    final var snapshot = new LinkedHashMap<String, Number>();
+    counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+    gauges.forEach((key, gauge) -> snapshot.put(key, gauge.getAsLong()));
+    histograms.forEach((key, histogram) -> {
+      snapshot.put(series(key, "_count", null), histogram.getCount());
+      snapshot.put(series(key, "_sum", null), histogram.getSumSeconds());
+    });
+    return snapshot;
+  }
+
+  /**
+   * @return Every metric rendered in the Prometheus text exposition format (version 0.0.4).
+   */
+  public String toPrometheusText() {
+    final var sb = new StringBuilder();
+    final var typed = new HashSet<String>();
+
+    counters.forEach((key, counter) -> {
+      writeType(sb, typed, key, "counter");
+      sb.append(key).append(' ').append(counter.sum()).append('\n');
+    });
+    gauges.forEach((key, gauge) -> {
+      writeType(sb, typed, key, "gauge");
+      sb.append(key).append(' ').append(gauge.getAsLong()).append('\n');
+    });
+    histograms.forEach((key, histogram) -> {
+      writeType(sb, typed, key, "histogram");
+      final var cumulative = histogram.getCumulativeCounts();
+      for (int i = 0; i < cumulative.length; i++) {
+        sb.append(series(key, "_bucket", "le=\"" + LatencyHistogram.BUCKETS[i] + "\"")).append(' ').append(cumulative[i]).append('\n');
+      }
+      sb.append(series(key, "_bucket", "le=\"+Inf\"")).append(' ').append(histogram.getCount()).append('\n');
+      sb.append(series(key, "_sum", null)).append(' ').append(histogram.getSumSeconds()).append('\n');
+      sb.append(series(key, "_count", null)).append(' ').append(histogram.getCount()).append('\n');
+    });
+    return sb.toString();
+  }
+
+  private static void writeType(StringBuilder sb, Set<String> typed, String key, String type) {
+    final var name = name(key);
+    if (typed.add(name)) {
+      sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+  }
+
+  static String key(String name, String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be given as name/value pairs");
+    }
+    if (labels.length == 0) {
+      return name;
+    }
+    final var sb = new StringBuilder(name).append('{');
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+    return sb.append('}').toString();
+  }
+
+  private static String name(String key) {
+    final var brace = key.indexOf('{');
+    return brace < 0 ? key : key.substring(0, brace);
+  }
+
+  // Derive a related series, e.g. foo{a="b"} -> foo_bucket{a="b",le="1"}
+  private static String series(String key, String suffix, String extraLabel) {
+    final var brace = key.indexOf('{');
+    final var name = brace < 0 ? key : key.substring(0, brace);
+    var labels = brace < 0 ? "" : key.substring(brace + 1, key.length() - 1);
+    if (extraLabel != null) {
+      labels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+    }
+    return name + suffix + (labels.isEmpty() ? "" : "{" + labels + "}");
+  }
+}
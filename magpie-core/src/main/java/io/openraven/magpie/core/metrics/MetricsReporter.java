@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.openraven.magpie.core.config.MetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a {@link MetricsRegistry} according to the {@link MetricsConfig}: as a JMX MBean, over a Prometheus text
+ * endpoint and/or as a periodic log dump.  Closing the reporter unregisters and stops everything it started.
+ */
+public class MetricsReporter implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsReporter.class);
+  private static final String OBJECT_NAME = "io.openraven.magpie:type=Metrics";
+
+  private final MetricsRegistry registry;
+  private ObjectName objectName;
+  private HttpServer server;
+  private ScheduledExecutorService logger;
+
+  public MetricsReporter(MetricsRegistry registry, MetricsConfig config) {
+    this.registry = registry;
+
+    if (config.isJmx()) {
+      try {
+        objectName = new ObjectName(OBJECT_NAME);
+        final var mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        if (mbeanServer.isRegistered(objectName)) {
+          mbeanServer.unregisterMBean(objectName);
+        }
+        mbeanServer.registerMBean(new MetricsMBean(registry), objectName);
+      } catch (JMException ex) {
+        LOGGER.warn("Couldn't register metrics MBean", ex);
+        objectName = null;
+      }
+    }
+
+    if (config.getPrometheusPort() != null) {
+      try {
+        server = HttpServer.create(new InetSocketAddress(config.getPrometheusPort()), 0);
+        server.createContext("/metrics", exchange -> {
+          final var body = registry.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          try (var os = exchange.getResponseBody()) {
+            os.write(body);
+          }
+        });
+        server.start();
+        LOGGER.info("Serving metrics on port {}", config.getPrometheusPort());
+      } catch (IOException ex) {
+        LOGGER.warn("Couldn't start metrics endpoint on port {}", config.getPrometheusPort(), ex);
+        server = null;
+      }
+    }
+
+    if (config.getLogIntervalSeconds() > 0) {
+      logger = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        return t;
+      });
+      logger.scheduleAtFixedRate(this::log, config.getLogIntervalSeconds(), config.getLogIntervalSeconds(), TimeUnit.SECONDS);
+    }
+  }
+
+  private void log() {
+    registry.snapshot().forEach((key, value) -> LOGGER.info("{} {}", key, value));
+  }
+
+  @Override
+  public void close() {
+    if (logger != null) {
+      logger.shutdownNow();
+      // Leave a final dump in the log so short runs still report their totals.
+      log();
+    }
+    if (server != null) {
+      server.stop(0);
+    }
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException ex) {
+        LOGGER.debug("Couldn't unregister metrics MBean", ex);
+      }
+    }
+  }
+}
@@ -33,6 +33,12 @@ public class IdentityPlugin implements IntermediatePlugin<Void> {
     emitter.emit(MagpieEnvelope.of(ngEnvelope, ID, ngEnvelope.getContents()));
   }
 
+  // Passes markers for unchanged resources on untouched, to whichever terminals accept them.
+  @Override
+  public boolean acceptsUnchanged() {
+    return true;
+  }
+
   @Override
   public String id() {
     return ID;
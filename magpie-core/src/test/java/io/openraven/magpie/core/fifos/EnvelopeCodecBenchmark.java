@@ -0,0 +1,68 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.util.Map;
+
+/**
+ * Compares wire size and encode/decode cost of the envelope codecs against the JSON path.  Not run as part of the test
+ * suite; run the main method directly, e.g. from the IDE.  The sample envelope mirrors what an origin layer emits,
+ * including the per-envelope discoveryMeta session tree.
+ */
+public class EnvelopeCodecBenchmark {
+
+  private static final int WARMUP = 20_000;
+  private static final int ITERATIONS = 100_000;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+    .findAndRegisterModules();
+
+  // Same configuration OriginLayer uses to produce discoveryMeta.
+  private static final ObjectMapper ANNOTATED_MAPPER = new ObjectMapper()
+    .findAndRegisterModules()
+    .activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.WRAPPER_ARRAY)
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+  public static void main(String[] args) throws Exception {
+    MagpieEnvelope env;
+    try (var is = EnvelopeCodecBenchmark.class.getResourceAsStream("/env.json")) {
+      env = MAPPER.readValue(is, MagpieEnvelope.class);
+    }
+    env.getContents().set("discoveryMeta", ANNOTATED_MAPPER.valueToTree(env.getSession()));
+    env.getContents().set("discoverySessionId", MAPPER.valueToTree(env.getSession().getId()));
+
+    var codecs = Map.of(
+      "json", JacksonEnvelopeCodec.JSON,
+      "smile", JacksonEnvelopeCodec.SMILE,
+      "cbor", JacksonEnvelopeCodec.CBOR);
+
+    System.out.printf("%-6s %10s %14s %14s%n", "codec", "bytes", "encode ns/op", "decode ns/op");
+    for (var name : new String[]{"json", "smile", "cbor"}) {
+      var codec = codecs.get(name);
+      var bytes = codec.encode(env);
+
+      for (int i = 0; i < WARMUP; i++) {
+        codec.decode(codec.encode(env));
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        codec.encode(env);
+      }
+      long encode = (System.nanoTime() - start) / ITERATIONS;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        codec.decode(bytes);
+      }
+      long decode = (System.nanoTime() - start) / ITERATIONS;
+
+      System.out.printf("%-6s %10d %14d %14d%n", name, bytes.length, encode, decode);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.config.ConfigException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnvelopeCodecTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .findAndRegisterModules();
+
+  private static MagpieEnvelope envelope() throws Exception {
+    try (var is = EnvelopeCodecTest.class.getResourceAsStream("/env.json")) {
+      return MAPPER.readValue(is, MagpieEnvelope.class);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"json", "smile", "cbor"})
+  public void testRoundTrip(String name) throws Exception {
+    var codec = EnvelopeCodec.forName(name);
+    var env = envelope();
+
+    var decoded = codec.decode(codec.encode(env));
+
+    assertEquals(env.getSession().getId(), decoded.getSession().getId());
+    assertEquals(env.getSession().getCreatedAt(), decoded.getSession().getCreatedAt());
+    assertEquals(env.getPluginPath(), decoded.getPluginPath());
+    assertEquals(env.getContents(), decoded.getContents());
+    assertEquals(env.getContentClass(), decoded.getContentClass());
+  }
+
+  @Test
+  public void testBinaryCodecsAreSmallerThanJson() throws Exception {
+    var env = envelope();
+    var json = JacksonEnvelopeCodec.JSON.encode(env).length;
+
+    assertTrue(JacksonEnvelopeCodec.SMILE.encode(env).length < json);
+    assertTrue(JacksonEnvelopeCodec.CBOR.encode(env).length < json);
+  }
+
+  @Test
+  public void testUnknownCodec() {
+    assertThrows(ConfigException.class, () -> EnvelopeCodec.forName("io.openraven.DoesNotExist"));
+  }
+}
@@ -3,9 +3,19 @@ package io.openraven.magpie.core.fifos;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.Test;
 
 import java.io.FileInputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,4 +34,75 @@ class KafkaDequeueTest {
     }
   }
 
+  private static final String TOPIC = "magpie-assets";
+  private static final TopicPartition P0 = new TopicPartition(TOPIC, 0);
+  private static final TopicPartition P1 = new TopicPartition(TOPIC, 1);
+
+  @Test
+  public void testMarkersAreOnlyPassedOnOnceReadFromEveryPartition() throws Exception {
+    final var consumer = consumer();
+    final var dequeue = new KafkaDequeue(consumer, TOPIC, JacksonEnvelopeCodec.JSON);
+    dequeue.setUpstreams(List.of("enumerate"));
+    assign(consumer, List.of(P0, P1));
+
+    consumer.addRecord(record(P0, 0, EndOfStream.marker("enumerate")));
+    consumer.addRecord(record(P0, 1, EndOfStream.marker("elsewhere")));
+    assertTrue(dequeue.pollBatch(10, Duration.ZERO).isEmpty());
+
+    consumer.addRecord(record(P1, 0, EndOfStream.marker("elsewhere")));
+    consumer.addRecord(record(P1, 1, EndOfStream.marker("enumerate")));
+    assertEquals(List.of("enumerate"), producers(dequeue.pollBatch(10, Duration.ZERO)));
+  }
+
+  @Test
+  public void testMarkersAreDroppedWhenPartitionsAreShared() throws Exception {
+    final var consumer = consumer();
+    final var dequeue = new KafkaDequeue(consumer, TOPIC, JacksonEnvelopeCodec.JSON);
+    dequeue.setUpstreams(List.of("enumerate"));
+    // Another consumer in the group holds partition 1.
+    assign(consumer, List.of(P0));
+
+    consumer.addRecord(record(P0, 0, new MagpieEnvelope(new Session(), List.of("test"), MAPPER.createObjectNode())));
+    consumer.addRecord(record(P0, 1, EndOfStream.marker("enumerate")));
+    consumer.addRecord(record(P0, 2, EndOfStream.marker("elsewhere")));
+
+    final var batch = dequeue.pollBatch(10, Duration.ZERO);
+    assertEquals(1, batch.size());
+    assertFalse(EndOfStream.isMarker(batch.get(0)));
+  }
+
+  @Test
+  public void testMarkersAreDroppedWithoutUpstreams() throws Exception {
+    final var consumer = consumer();
+    final var dequeue = new KafkaDequeue(consumer, TOPIC, JacksonEnvelopeCodec.JSON);
+    assign(consumer, List.of(P0, P1));
+
+    consumer.addRecord(record(P0, 0, EndOfStream.marker("enumerate")));
+    consumer.addRecord(record(P1, 0, EndOfStream.marker("enumerate")));
+    assertTrue(dequeue.pollBatch(10, Duration.ZERO).isEmpty());
+  }
+
+  private static MockConsumer<String, byte[]> consumer() {
+    final var consumer = new MockConsumer<String, byte[]>(OffsetResetStrategy.EARLIEST);
+    consumer.updatePartitions(TOPIC, List.of(
+      new PartitionInfo(TOPIC, 0, null, null, null),
+      new PartitionInfo(TOPIC, 1, null, null, null)));
+    return consumer;
+  }
+
+  private static void assign(MockConsumer<String, byte[]> consumer, List<TopicPartition> partitions) {
+    consumer.rebalance(partitions);
+    final var offsets = new HashMap<TopicPartition, Long>();
+    partitions.forEach(p -> offsets.put(p, 0L));
+    consumer.updateBeginningOffsets(offsets);
+  }
+
+  private static ConsumerRecord<String, byte[]> record(TopicPartition partition, long offset, MagpieEnvelope env) throws FifoException {
+    return new ConsumerRecord<>(TOPIC, partition.partition(), offset, null, JacksonEnvelopeCodec.JSON.encode(env));
+  }
+
+  private static List<String> producers(List<MagpieEnvelope> batch) {
+    return batch.stream().map(EndOfStream::producer).collect(Collectors.toList());
+  }
+
 }
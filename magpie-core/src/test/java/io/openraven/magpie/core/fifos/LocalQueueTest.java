@@ -0,0 +1,93 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static MagpieEnvelope envelope() {
+    return new MagpieEnvelope(new Session(), List.of("test"), MAPPER.createObjectNode());
+  }
+
+  @Test
+  public void testPollWaitReturnsEmptyWhenIdle() throws Exception {
+    var queue = new LocalQueue();
+    assertTrue(queue.poll(Duration.ofMillis(10)).isEmpty());
+  }
+
+  @Test
+  public void testPollWaitWakesOnAdd() throws Exception {
+    var queue = new LocalQueue();
+    var env = envelope();
+    var executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      executor.schedule(() -> {
+        queue.add(env);
+        return null;
+      }, 50, TimeUnit.MILLISECONDS);
+
+      var start = System.nanoTime();
+      var polled = queue.poll(Duration.ofSeconds(10));
+      assertSame(env, polled.orElseThrow());
+      assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPollBatchDrainsUpToMax() throws Exception {
+    var queue = new LocalQueue();
+    for (int i = 0; i < 5; i++) {
+      queue.add(envelope());
+    }
+
+    assertEquals(3, queue.pollBatch(3, Duration.ofMillis(10)).size());
+    assertEquals(2, queue.pollBatch(3, Duration.ofMillis(10)).size());
+    assertTrue(queue.pollBatch(3, Duration.ofMillis(10)).isEmpty());
+  }
+
+  @Test
+  public void testBoundedQueueBlocksEmitterWhenFull() throws Exception {
+    var queue = new LocalQueue(Map.of(LocalQueue.CAPACITY_PROPERTY, 2));
+    queue.add(envelope());
+    queue.add(envelope());
+
+    var blocked = CompletableFuture.runAsync(() -> {
+      try {
+        queue.add(envelope());
+      } catch (FifoException ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    Thread.sleep(50);
+    assertFalse(blocked.isDone());
+    assertEquals(2, queue.getDepth());
+
+    assertTrue(queue.poll().isPresent());
+    blocked.get(5, TimeUnit.SECONDS);
+    assertEquals(2, queue.getDepth());
+    assertEquals(2, queue.getHighWaterMark());
+  }
+
+  @Test
+  public void testBoundedQueueFailPolicy() throws Exception {
+    var queue = new LocalQueue(Map.of(LocalQueue.CAPACITY_PROPERTY, "1", LocalQueue.OVERFLOW_PROPERTY, "fail"));
+    queue.add(envelope());
+    assertThrows(FifoException.class, () -> queue.add(envelope()));
+    assertEquals(1, queue.getHighWaterMark());
+  }
+}
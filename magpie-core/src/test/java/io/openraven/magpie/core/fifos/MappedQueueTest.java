@@ -0,0 +1,111 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @TempDir
+  Path dir;
+
+  private static MagpieEnvelope envelope(int i) {
+    var contents = MAPPER.createObjectNode().put("index", i);
+    return new MagpieEnvelope(new Session(), List.of("test"), contents);
+  }
+
+  private MappedQueue open(long segmentSize) {
+    return new MappedQueue(Map.of(MappedQueue.PATH_PROPERTY, dir.toString(), MappedQueue.SEGMENT_SIZE_PROPERTY, segmentSize),
+      JacksonEnvelopeCodec.SMILE);
+  }
+
+  @Test
+  public void testFifoOrderAcrossSegments() throws Exception {
+    var queue = open(512);
+    for (int i = 0; i < 50; i++) {
+      queue.add(envelope(i));
+    }
+    assertEquals(50, queue.getDepth());
+
+    for (int i = 0; i < 50; i++) {
+      var env = queue.poll().orElseThrow();
+      assertEquals(i, env.getContents().get("index").asInt());
+      queue.acknowledge(List.of(env));
+    }
+    assertTrue(queue.poll(Duration.ofMillis(10)).isEmpty());
+    assertEquals(0, queue.getDepth());
+
+    // Consumed segments are removed, leaving only the segment currently being written.
+    try (var files = Files.list(dir)) {
+      assertEquals(1, files.filter(p -> p.toString().endsWith(".seg")).count());
+    }
+  }
+
+  @Test
+  public void testResumesFromLastConsumedEnvelope() throws Exception {
+    var queue = open(1024);
+    for (int i = 0; i < 20; i++) {
+      queue.add(envelope(i));
+    }
+    queue.acknowledge(queue.pollBatch(5, Duration.ZERO));
+    queue.close();
+
+    var reopened = open(1024);
+    assertEquals(15, reopened.getDepth());
+    var batch = reopened.pollBatch(100, Duration.ZERO);
+    assertEquals(15, batch.size());
+    assertEquals(5, batch.get(0).getContents().get("index").asInt());
+
+    reopened.add(envelope(20));
+    assertEquals(20, reopened.poll().orElseThrow().getContents().get("index").asInt());
+  }
+
+  @Test
+  public void testRedeliversUnacknowledgedBatches() throws Exception {
+    var queue = open(512);
+    for (int i = 0; i < 20; i++) {
+      queue.add(envelope(i));
+    }
+    var first = queue.pollBatch(5, Duration.ZERO);
+    var second = queue.pollBatch(5, Duration.ZERO);
+    // Acknowledged out of order, so the read position can't move past the first batch.
+    queue.acknowledge(second);
+    queue.close();
+
+    var reopened = open(512);
+    assertEquals(20, reopened.getDepth());
+    reopened.acknowledge(reopened.pollBatch(10, Duration.ZERO));
+    reopened.close();
+
+    assertEquals(10, open(512).getDepth());
+  }
+
+  @Test
+  public void testDropsEndOfStreamMarkersFromEarlierRuns() throws Exception {
+    var queue = open(1024);
+    queue.add(envelope(0));
+    queue.addEndOfStream("origin");
+    queue.close();
+
+    var reopened = open(1024);
+    reopened.add(envelope(1));
+    reopened.addEndOfStream("origin");
+    var batch = reopened.pollBatch(10, Duration.ZERO);
+    assertEquals(3, batch.size());
+    assertEquals(0, batch.get(0).getContents().get("index").asInt());
+    assertEquals(1, batch.get(1).getContents().get("index").asInt());
+    assertTrue(EndOfStream.isMarker(batch.get(2)));
+  }
+}
@@ -0,0 +1,119 @@
+package io.openraven.magpie.core.layers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.api.TerminalPlugin;
+import io.openraven.magpie.core.fifos.EndOfStream;
+import io.openraven.magpie.core.fifos.LocalQueue;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TerminalLayerTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static class CollectingPlugin implements TerminalPlugin<Void> {
+    private final List<MagpieEnvelope> accepted = new ArrayList<>();
+    private final boolean acceptsUnchanged;
+
+    CollectingPlugin() {
+      this(false);
+    }
+
+    CollectingPlugin(boolean acceptsUnchanged) {
+      this.acceptsUnchanged = acceptsUnchanged;
+    }
+
+    @Override
+    public void accept(MagpieEnvelope env) {
+      accepted.add(env);
+    }
+
+    @Override
+    public boolean acceptsUnchanged() {
+      return acceptsUnchanged;
+    }
+
+    @Override
+    public String id() {
+      return "test.collect";
+    }
+
+    @Override
+    public void init(Void config, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return Void.class;
+    }
+  }
+
+  private static MagpieEnvelope envelope() {
+    return new MagpieEnvelope(new Session(), List.of("test"), MAPPER.createObjectNode());
+  }
+
+  @Test
+  public void testCompletesAfterAllUpstreamMarkers() throws Exception {
+    var queue = new LocalQueue();
+    var plugin = new CollectingPlugin();
+    var layer = new TerminalLayer("output", queue, List.of(plugin), 2, List.of("enumerate-a", "enumerate-b"), new MetricsRegistry());
+
+    queue.add(envelope());
+    queue.add(envelope());
+    queue.addEndOfStream("enumerate-a");
+    queue.add(envelope());
+    layer.exec();
+    layer.exec();
+    assertFalse(layer.isComplete());
+
+    // A marker from a layer that doesn't feed this one, e.g. another process's on a shared topic, doesn't count.
+    queue.addEndOfStream("elsewhere");
+    layer.exec();
+    assertFalse(layer.isComplete());
+
+    queue.addEndOfStream("enumerate-b");
+    layer.exec();
+    assertTrue(layer.isComplete());
+    assertEquals(3, plugin.accepted.size());
+    assertTrue(plugin.accepted.stream().noneMatch(EndOfStream::isMarker));
+    assertEquals(3, layer.getProcessedCount());
+  }
+
+  @Test
+  public void testUnchangedMarkersOnlyReachPluginsThatAcceptThem() throws Exception {
+    var queue = new LocalQueue();
+    var json = new CollectingPlugin();
+    var persist = new CollectingPlugin(true);
+    var layer = new TerminalLayer("output", queue, List.of(json, persist), 10, List.of("enumerate"), new MetricsRegistry());
+
+    var marker = envelope();
+    marker.getMetadata().put(MagpieEnvelope.UNCHANGED_METADATA, "true");
+    queue.add(envelope());
+    queue.add(marker);
+    layer.exec();
+    queue.add(marker);
+    layer.exec();
+
+    assertEquals(1, json.accepted.size());
+    assertTrue(json.accepted.stream().noneMatch(MagpieEnvelope::isUnchanged));
+    assertEquals(3, persist.accepted.size());
+  }
+
+  @Test
+  public void testNeverCompletesWithoutUpstream() throws Exception {
+    var queue = new LocalQueue();
+    var layer = new TerminalLayer("output", queue, List.of(new CollectingPlugin()), 10, List.of(), new MetricsRegistry());
+
+    queue.addEndOfStream("enumerate");
+    layer.exec();
+    assertFalse(layer.isComplete());
+  }
+}
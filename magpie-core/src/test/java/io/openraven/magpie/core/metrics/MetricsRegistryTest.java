@@ -0,0 +1,36 @@
+package io.openraven.magpie.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsRegistryTest {
+
+  @Test
+  public void testPrometheusText() {
+    var registry = new MetricsRegistry();
+    registry.counter("magpie_layer_envelopes_in_total", "layer", "output").add(3);
+    registry.gauge("magpie_fifo_depth", () -> 7L, "fifo", "default");
+    registry.histogram("magpie_plugin_accept_seconds", "layer", "output", "plugin", "magpie.json").record(2_000_000L);
+
+    var text = registry.toPrometheusText();
+    assertTrue(text.contains("# TYPE magpie_layer_envelopes_in_total counter\n"));
+    assertTrue(text.contains("magpie_layer_envelopes_in_total{layer=\"output\"} 3\n"));
+    assertTrue(text.contains("magpie_fifo_depth{fifo=\"default\"} 7\n"));
+    assertTrue(text.contains("magpie_plugin_accept_seconds_bucket{layer=\"output\",plugin=\"magpie.json\",le=\"0.001\"} 0\n"));
+    assertTrue(text.contains("magpie_plugin_accept_seconds_bucket{layer=\"output\",plugin=\"magpie.json\",le=\"0.005\"} 1\n"));
+    assertTrue(text.contains("magpie_plugin_accept_seconds_count{layer=\"output\",plugin=\"magpie.json\"} 1\n"));
+  }
+
+  @Test
+  public void testCountersAreShared() {
+    var registry = new MetricsRegistry();
+    registry.counter("requests", "layer", "a").increment();
+    registry.counter("requests", "layer", "a").increment();
+    registry.counter("requests", "layer", "b").increment();
+
+    assertEquals(2L, registry.snapshot().get("requests{layer=\"a\"}"));
+    assertEquals(1L, registry.snapshot().get("requests{layer=\"b\"}"));
+  }
+}
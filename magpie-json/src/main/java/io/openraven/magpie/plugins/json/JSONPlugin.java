@@ -52,6 +52,12 @@ public class JSONPlugin implements TerminalPlugin<Void> {
     }
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    // Writes to the shared generator are guarded by SYNC.
+    return true;
+  }
+
   @Override
   public String id() {
     return ID;
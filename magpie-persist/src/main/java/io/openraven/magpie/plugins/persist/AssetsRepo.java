@@ -16,7 +16,9 @@
 
 package io.openraven.magpie.plugins.persist;
 
+import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.Resource;
+import io.openraven.magpie.data.aws.AWSResource;
 
 import java.io.Closeable;
 import java.util.List;
@@ -28,6 +30,19 @@ public interface AssetsRepo extends Closeable {
 
   void upsert(List<Resource> awsResource);
 
+  /**
+   * Records that already persisted assets are still present, updating only their updatedIso and discoverySessionId.
+   * Used for the markers emitted by incremental discovery, which leave out everything else.
+   * @return The document ids of the assets that couldn't be updated, because they aren't persisted or the update failed.
+   */
+  List<String> touch(List<AWSResource> awsResources);
+
+  /**
+   * Records a discovery session so assets can be joined to it by their discoverySessionId.  Sessions that have
+   * already been recorded are left untouched.
+   */
+  void upsertSession(Session session);
+
   void executeNative(String query);
 
   List<Map<String, Object>> queryNative(String query);
@@ -20,16 +20,30 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
 import io.openraven.magpie.api.TerminalPlugin;
 import io.openraven.magpie.data.Resource;
+import io.openraven.magpie.data.aws.AWSResource;
+import io.openraven.magpie.plugins.persist.config.PostgresPersistenceProvider;
 import io.openraven.magpie.plugins.persist.impl.HibernateAssetsRepoImpl;
+import jakarta.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
 
 public class PersistPlugin implements TerminalPlugin<PersistConfig> {
 
-  private final Object SYNC = new Object();
   private final ObjectMapper objectMapper = new ObjectMapper()
     .registerModule(new JavaTimeModule());
 
@@ -37,18 +51,113 @@ public class PersistPlugin implements TerminalPlugin<PersistConfig> {
 
   private Logger logger;
 
-  private AssetsRepo assetsRepo;
+  private PersistConfig config;
+  private EntityManagerFactory entityManagerFactory;
+
+  // EntityManagers are not thread-safe, so each worker thread upserts through its own repo.
+  private final Queue<AssetsRepo> assetsRepos = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<AssetsRepo> assetsRepo = ThreadLocal.withInitial(() -> {
+    final var repo = new HibernateAssetsRepoImpl(entityManagerFactory.createEntityManager(), config);
+    assetsRepos.add(repo);
+    return repo;
+  });
+  // Sessions already written to the discoverysession table by this process.
+  private final Set<String> knownSessions = ConcurrentHashMap.newKeySet();
 
   @Override
   public void accept(MagpieEnvelope env) {
-    synchronized (SYNC) {
+    try {
+      Resource asset = objectMapper.treeToValue(env.getContents(), Resource.class);
+      recordSession(env.getSession());
+      if (MagpieEnvelope.isUnchanged(env)) {
+        touch(List.of(env), List.of(asset));
+        return;
+      }
+      assetsRepo.get().upsert(asset);
+    } catch (JsonProcessingException e) {
+      logger.warn("Unable to parse assetType from content: {}", env.getContents().toPrettyString());
+    }
+  }
+
+  @Override
+  public void acceptBatch(List<MagpieEnvelope> envs) {
+    final var assets = new ArrayList<Resource>(envs.size());
+    final var markers = new ArrayList<MagpieEnvelope>();
+    final var unchanged = new ArrayList<Resource>();
+    for (var env : envs) {
+      recordSession(env.getSession());
       try {
-        Resource asset = objectMapper.treeToValue(env.getContents(), Resource.class);
-        assetsRepo.upsert(asset);
+        final var asset = objectMapper.treeToValue(env.getContents(), Resource.class);
+        if (MagpieEnvelope.isUnchanged(env)) {
+          markers.add(env);
+          unchanged.add(asset);
+        } else {
+          assets.add(asset);
+        }
       } catch (JsonProcessingException e) {
         logger.warn("Unable to parse assetType from content: {}", env.getContents().toPrettyString());
       }
     }
+    if (!unchanged.isEmpty()) {
+      touch(markers, unchanged);
+    }
+    if (assets.isEmpty()) {
+      return;
+    }
+    // Upsert the whole batch in a single transaction rather than one round trip per asset.
+    assetsRepo.get().upsert(assets);
+  }
+
+  // Markers for unchanged assets leave out their configuration, which an upsert would overwrite with nulls, so they
+  // only refresh assets that are already persisted.  Those that aren't are reported back to the discovery that emitted
+  // the marker, through the file it names, so that its next scan emits them in full.
+  private void touch(List<MagpieEnvelope> markers, List<Resource> assets) {
+    final var resources = new ArrayList<AWSResource>(assets.size());
+    final var staleFiles = new HashMap<String, String>();
+    for (int i = 0; i < assets.size(); i++) {
+      if (!(assets.get(i) instanceof AWSResource)) {
+        logger.warn("Ignoring unchanged marker for unsupported asset type {}", assets.get(i).getClass().getSimpleName());
+        continue;
+      }
+      final var resource = (AWSResource) assets.get(i);
+      resources.add(resource);
+      final var staleFile = markers.get(i).getMetadata().get(MagpieEnvelope.STALE_FILE_METADATA);
+      if (staleFile != null) {
+        staleFiles.put(resource.documentId, staleFile);
+      }
+    }
+    assetsRepo.get().touch(resources).stream()
+      .filter(staleFiles::containsKey)
+      .collect(Collectors.groupingBy(staleFiles::get))
+      .forEach(this::reportStale);
+  }
+
+  // Appends are serialized, as several workers may report to the same file.
+  private synchronized void reportStale(String file, List<String> documentIds) {
+    try {
+      Files.write(Path.of(file), documentIds, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      logger.info("{} unchanged assets aren't persisted, reported to {} to be emitted in full by the next scan", documentIds.size(), file);
+    } catch (IOException ex) {
+      logger.warn("Couldn't report {} unpersisted assets to {}: {}", documentIds.size(), file, ex.getMessage());
+    }
+  }
+
+  // Envelopes may carry only a discoverySessionId rather than the full discoveryMeta, so the session itself is
+  // persisted once in its own table.
+  private void recordSession(Session session) {
+    if (session != null && knownSessions.add(session.getId())) {
+      assetsRepo.get().upsertSession(session);
+    }
+  }
+
+  @Override
+  public boolean acceptsUnchanged() {
+    return true;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
   }
 
   @Override
@@ -59,18 +168,21 @@ public class PersistPlugin implements TerminalPlugin<PersistConfig> {
   @Override
   public void init(PersistConfig config, Logger logger) {
     this.logger = logger;
-    assetsRepo = new HibernateAssetsRepoImpl(config);
+    this.config = config;
+    entityManagerFactory = PostgresPersistenceProvider.getEntityManagerFactory(config);
   }
 
   @Override
   public void shutdown() {
-    synchronized (SYNC) {
+    AssetsRepo repo;
+    while ((repo = assetsRepos.poll()) != null) {
       try {
-        assetsRepo.close();
+        repo.close();
       } catch (IOException ex) {
         logger.warn("Error closing asset repo",ex);
       }
     }
+    entityManagerFactory.close();
   }
 
   @Override
@@ -25,6 +25,7 @@ import org.hibernate.cfg.Environment;
 import org.hibernate.service.ServiceRegistry;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import java.util.Optional;
 import java.util.Properties;
 
@@ -34,6 +35,14 @@ import static java.lang.String.format;
 public class PostgresPersistenceProvider {
 
   public static EntityManager getEntityManager(PersistConfig config) {
+    return getEntityManagerFactory(config).createEntityManager();
+  }
+
+  /**
+   * Builds a factory from which independent {@link EntityManager} instances may be created, e.g. one per worker thread.
+   * The database is migrated (if configured) before the factory is returned.
+   */
+  public static EntityManagerFactory getEntityManagerFactory(PersistConfig config) {
 
     Properties settings = new Properties();
     settings.put(Environment.DRIVER, "org.postgresql.Driver");
@@ -57,7 +66,7 @@ public class PostgresPersistenceProvider {
         migratePostgreDB(config); // migrating DB before EM creation to validate schema further
     }
 
-    return configuration.buildSessionFactory(serviceRegistry).createEntityManager();
+    return configuration.buildSessionFactory(serviceRegistry);
   }
 
   private static void migratePostgreDB(PersistConfig config) {
@@ -16,7 +16,9 @@
 
 package io.openraven.magpie.plugins.persist.impl;
 
+import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.Resource;
+import io.openraven.magpie.data.aws.AWSResource;
 import io.openraven.magpie.plugins.persist.AssetsRepo;
 import io.openraven.magpie.plugins.persist.PersistConfig;
 import io.openraven.magpie.plugins.persist.config.PostgresPersistenceProvider;
@@ -28,9 +30,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class HibernateAssetsRepoImpl implements AssetsRepo, Closeable {
   private final Logger logger = LoggerFactory.getLogger(HibernateAssetsRepoImpl.class);
@@ -39,7 +44,11 @@ public class HibernateAssetsRepoImpl implements AssetsRepo, Closeable {
   private final PersistConfig persistConfig;
 
   public HibernateAssetsRepoImpl(PersistConfig persistConfig) {
-    this.entityManager = PostgresPersistenceProvider.getEntityManager(persistConfig);
+    this(PostgresPersistenceProvider.getEntityManager(persistConfig), persistConfig);
+  }
+
+  public HibernateAssetsRepoImpl(EntityManager entityManager, PersistConfig persistConfig) {
+    this.entityManager = entityManager;
     this.persistConfig = persistConfig;
   }
 
@@ -56,6 +65,7 @@ public class HibernateAssetsRepoImpl implements AssetsRepo, Closeable {
       logger.error("Rolling back transaction failed due to: " + e.getMessage());
       logger.debug("Details", e);
       entityManager.getTransaction().rollback();
+      entityManager.clear();
     }
   }
 
@@ -68,6 +78,63 @@ public class HibernateAssetsRepoImpl implements AssetsRepo, Closeable {
       entityManager.flush();
       entityManager.getTransaction().commit();
       entityManager.clear();
+    } catch (Exception e) {
+      logger.warn("Rolling back batch of {} assets, retrying them one at a time: {}", resources.size(), e.getMessage());
+      logger.debug("Details", e);
+      if (entityManager.getTransaction().isActive()) {
+        entityManager.getTransaction().rollback();
+      }
+      // The rolled back merges leave managed copies behind, which mustn't leak into the retries.
+      entityManager.clear();
+      // Only the assets that fail on their own are then lost.
+      resources.forEach(this::upsert);
+    }
+  }
+
+  @Override
+  public List<String> touch(List<AWSResource> resources) {
+    final var missing = new ArrayList<String>();
+    try {
+      entityManager.getTransaction().begin();
+
+      for (var resource : resources) {
+        final var entity = entityManager.getMetamodel().entity(resource.getClass()).getName();
+        final var updated = entityManager.createQuery("UPDATE " + entity + " r SET r.updatedIso = :updatedIso, r.discoverySessionId = :discoverySessionId " +
+            "WHERE r.documentId = :documentId")
+          .setParameter("updatedIso", resource.updatedIso)
+          .setParameter("discoverySessionId", resource.discoverySessionId)
+          .setParameter("documentId", resource.documentId)
+          .executeUpdate();
+        if (updated == 0) {
+          missing.add(resource.documentId);
+        }
+      }
+
+      entityManager.getTransaction().commit();
+      return missing;
+    } catch (Exception e) {
+      logger.error("Rolling back transaction failed due to: " + e.getMessage());
+      logger.debug("Details", e);
+      if (entityManager.getTransaction().isActive()) {
+        entityManager.getTransaction().rollback();
+      }
+      // None of the assets were refreshed.
+      return resources.stream().map(resource -> resource.documentId).collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  public void upsertSession(Session session) {
+    try {
+      entityManager.getTransaction().begin();
+
+      entityManager.createNativeQuery("INSERT INTO " + persistConfig.getSchema() + ".discoverysession (discoverysessionid, createdat) " +
+          "VALUES (:id, :createdAt) ON CONFLICT DO NOTHING")
+        .setParameter("id", session.getId())
+        .setParameter("createdAt", Timestamp.from(session.getCreatedAt()))
+        .executeUpdate();
+
+      entityManager.getTransaction().commit();
     } catch (Exception e) {
       logger.error("Rolling back transaction failed due to: " + e.getMessage());
       logger.debug("Details", e);
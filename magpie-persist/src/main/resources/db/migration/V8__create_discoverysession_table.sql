@@ -0,0 +1,4 @@
+CREATE TABLE IF NOT EXISTS discoverysession (
+    discoverysessionid TEXT primary key not null,
+    createdat TIMESTAMPTZ
+);